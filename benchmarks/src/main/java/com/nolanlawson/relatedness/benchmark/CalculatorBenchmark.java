@@ -0,0 +1,51 @@
+package com.nolanlawson.relatedness.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.nolanlawson.relatedness.PackedRelation;
+import com.nolanlawson.relatedness.Relatedness;
+import com.nolanlawson.relatedness.RelatednessCalculator;
+import com.nolanlawson.relatedness.Relation;
+import com.nolanlawson.relatedness.parser.RelativeNameParser;
+
+/**
+ * RelatednessCalculator on the relations for every phrase in the short and long corpora.
+ * 
+ * @author nolan
+ *
+ */
+@State(Scope.Thread)
+public class CalculatorBenchmark {
+
+	private Relation[] relations;
+	private int[][] packedRelations;
+	private double[] output = new double[2];
+	private Cycler cycler = new Cycler();
+	
+	@Setup
+	public void setUp() {
+		String[] shortPhrases = Corpus.load(Corpus.SHORT);
+		String[] longPhrases = Corpus.load(Corpus.LONG);
+		relations = new Relation[shortPhrases.length + longPhrases.length];
+		packedRelations = new int[relations.length][];
+		for (int i = 0; i < relations.length; i++) {
+			String phrase = i < shortPhrases.length ? shortPhrases[i] : longPhrases[i - shortPhrases.length];
+			relations[i] = RelativeNameParser.parse(phrase).getRelation();
+			packedRelations[i] = PackedRelation.pack(relations[i]);
+		}
+	}
+	
+	@Benchmark
+	public Relatedness calculate() {
+		return RelatednessCalculator.calculate(cycler.next(relations));
+	}
+	
+	@Benchmark
+	public double[] calculatePacked() {
+		RelatednessCalculator.calculate(cycler.next(packedRelations), output, 0);
+		return output;
+	}
+}
@@ -0,0 +1,42 @@
+package com.nolanlawson.relatedness.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.CharStreams;
+
+/**
+ * The checked-in phrases that the benchmarks run on, so that results are comparable between runs.
+ * 
+ * @author nolan
+ *
+ */
+public class Corpus {
+
+	public static final String SHORT = "short.txt";
+	public static final String LONG = "long.txt";
+	public static final String INVALID = "invalid.txt";
+	
+	private Corpus() {
+	}
+	
+	public static String[] load(String name) {
+		InputStream inputStream = Corpus.class.getResourceAsStream("/corpus/" + name);
+		if (inputStream == null) {
+			throw new IllegalArgumentException("no such corpus: " + name);
+		}
+		try {
+			try {
+				List<String> lines = CharStreams.readLines(new InputStreamReader(inputStream, Charsets.UTF_8));
+				return lines.toArray(new String[lines.size()]);
+			} finally {
+				inputStream.close();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("couldn't read corpus: " + name, e);
+		}
+	}
+}
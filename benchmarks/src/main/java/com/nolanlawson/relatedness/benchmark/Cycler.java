@@ -0,0 +1,23 @@
+package com.nolanlawson.relatedness.benchmark;
+
+/**
+ * Cycles through the indexes of an array, so that each call to a benchmark method works on the next
+ * item.  Each benchmark state keeps its own.
+ * 
+ * @author nolan
+ *
+ */
+public class Cycler {
+
+	private int idx;
+	
+	public int next(int length) {
+		// not idx++ % length, which goes negative once idx overflows on a long run
+		idx = (idx + 1) % length;
+		return idx;
+	}
+	
+	public <T> T next(T[] items) {
+		return items[next(items.length)];
+	}
+}
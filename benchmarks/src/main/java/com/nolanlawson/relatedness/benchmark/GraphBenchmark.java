@@ -0,0 +1,41 @@
+package com.nolanlawson.relatedness.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.nolanlawson.relatedness.graph.RelationGraph;
+import com.nolanlawson.relatedness.parser.RelativeNameParser;
+
+/**
+ * RelationGraph.drawGraph() and drawSvg() for the graphs of every phrase in the long corpus.
+ * 
+ * @author nolan
+ *
+ */
+@State(Scope.Thread)
+public class GraphBenchmark {
+
+	private RelationGraph[] graphs;
+	private Cycler cycler = new Cycler();
+	
+	@Setup
+	public void setUp() {
+		String[] phrases = Corpus.load(Corpus.LONG);
+		graphs = new RelationGraph[phrases.length];
+		for (int i = 0; i < phrases.length; i++) {
+			graphs[i] = RelativeNameParser.parse(phrases[i], true).getGraph();
+		}
+	}
+	
+	@Benchmark
+	public String drawGraph() {
+		return cycler.next(graphs).drawGraph();
+	}
+	
+	@Benchmark
+	public String drawSvg() {
+		return cycler.next(graphs).drawSvg();
+	}
+}
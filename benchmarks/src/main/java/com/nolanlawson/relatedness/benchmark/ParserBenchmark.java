@@ -0,0 +1,57 @@
+package com.nolanlawson.relatedness.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.nolanlawson.relatedness.UnknownRelationException;
+import com.nolanlawson.relatedness.parser.RelationParseResult;
+import com.nolanlawson.relatedness.parser.RelativeNameParser;
+
+/**
+ * RelativeNameParser on short ("cousin"), long ("dad's cousin's daughter's son") and invalid 
+ * ("great son") phrases.  Each invocation parses the next phrase in the corpus.
+ * 
+ * @author nolan
+ *
+ */
+@State(Scope.Thread)
+public class ParserBenchmark {
+
+	private String[] shortPhrases;
+	private String[] longPhrases;
+	private String[] invalidPhrases;
+	private Cycler cycler = new Cycler();
+	
+	@Setup
+	public void setUp() {
+		shortPhrases = Corpus.load(Corpus.SHORT);
+		longPhrases = Corpus.load(Corpus.LONG);
+		invalidPhrases = Corpus.load(Corpus.INVALID);
+	}
+	
+	@Benchmark
+	public RelationParseResult parseShort() {
+		return RelativeNameParser.parse(cycler.next(shortPhrases));
+	}
+	
+	@Benchmark
+	public RelationParseResult parseLong() {
+		return RelativeNameParser.parse(cycler.next(longPhrases));
+	}
+	
+	@Benchmark
+	public Object parseInvalid() {
+		try {
+			return RelativeNameParser.parse(cycler.next(invalidPhrases));
+		} catch (UnknownRelationException e) {
+			return e;
+		}
+	}
+	
+	@Benchmark
+	public RelationParseResult tryParseInvalid() {
+		return RelativeNameParser.tryParse(cycler.next(invalidPhrases));
+	}
+}
@@ -0,0 +1,60 @@
+package com.nolanlawson.relatedness.benchmark;
+
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import com.nolanlawson.relatedness.autosuggest.RelationSuggester;
+
+/**
+ * Building a RelationSuggester, and suggest() for prefixes of several lengths, both from one thread
+ * and from one thread per core.
+ * 
+ * @author nolan
+ *
+ */
+@State(Scope.Benchmark)
+public class SuggesterBenchmark {
+
+	private static final int LIMIT = 10;
+	
+	private RelationSuggester suggester;
+	
+	@Setup
+	public void setUp() {
+		suggester = new RelationSuggester();
+	}
+	
+	@Benchmark
+	public List<String> suggest(Prefix prefix) {
+		return suggester.suggest(prefix.prefix, LIMIT);
+	}
+	
+	/**
+	 * Every thread shares the same suggester.  With linear scaling, the total score is the score 
+	 * of suggest() times the number of threads.
+	 */
+	@Benchmark
+	@Threads(Threads.MAX)
+	public List<String> suggestShared(Prefix prefix) {
+		return RelationSuggester.getInstance().suggest(prefix.prefix, LIMIT);
+	}
+	
+	@Benchmark
+	public RelationSuggester construct() {
+		return new RelationSuggester();
+	}
+	
+	// kept separate so that only suggest() is run once per prefix
+	@State(Scope.Benchmark)
+	public static class Prefix {
+		
+		@Param({"g", "gra", "grandma", "grandma's c", "dad's second cousin's"})
+		public String prefix;
+	}
+}
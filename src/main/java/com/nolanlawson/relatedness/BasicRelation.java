@@ -57,7 +57,7 @@ public enum BasicRelation {
 	private Relation relation;
 
 	private BasicRelation(Relation relation) {
-		this.relation = relation;
+		this.relation = relation.intern();
 	}
 	
 	public Relation getRelation() {
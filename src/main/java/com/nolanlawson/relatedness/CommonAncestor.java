@@ -1,30 +1,77 @@
 package com.nolanlawson.relatedness;
 
-public class CommonAncestor {
+/**
+ * An ancestor shared by two people, described by how many generations up from each of them
+ * it is.  Immutable, so instances can be shared freely.
+ *
+ * @author nolan
+ *
+ */
+public final class CommonAncestor {
+
+	// small ancestors are by far the most common, so share them rather than reallocating them
+	private static final int CACHE_SIZE = 16;
+	private static final CommonAncestor[][] CACHE = new CommonAncestor[CACHE_SIZE][CACHE_SIZE];
+	static {
+		for (int i = 0; i < CACHE_SIZE; i++) {
+			for (int j = 0; j < CACHE_SIZE; j++) {
+				CACHE[i][j] = new CommonAncestor(i, j);
+			}
+		}
+	}
+
+	private final int distanceFromFirst;
+	private final int distanceFromSecond;
 
-	private int distanceFromFirst;
-	private int distanceFromSecond;
-	
 	public CommonAncestor(int distanceFromFirst, int distanceFromSecond) {
 		this.distanceFromFirst = distanceFromFirst;
 		this.distanceFromSecond = distanceFromSecond;
 	}
-	
+
+	/**
+	 * Same as the constructor, except it returns a shared instance if possible.
+	 * @param distanceFromFirst
+	 * @param distanceFromSecond
+	 * @return
+	 */
+	public static CommonAncestor valueOf(int distanceFromFirst, int distanceFromSecond) {
+		if (distanceFromFirst >= 0 && distanceFromFirst < CACHE_SIZE
+				&& distanceFromSecond >= 0 && distanceFromSecond < CACHE_SIZE) {
+			return CACHE[distanceFromFirst][distanceFromSecond];
+		}
+		return new CommonAncestor(distanceFromFirst, distanceFromSecond);
+	}
+
 	public int getDistanceFromFirst() {
 		return distanceFromFirst;
 	}
 	public int getDistanceFromSecond() {
 		return distanceFromSecond;
 	}
-	public void setDistanceFromFirst(int distanceFromFirst) {
-		this.distanceFromFirst = distanceFromFirst;
-	}
-	public void setDistanceFromSecond(int distanceFromSecond) {
-		this.distanceFromSecond = distanceFromSecond;
+
+	/**
+	 * Apply any number of "greats", e.g. to go from grandparent to great-grandparent.  This is
+	 * done by simply increasing the larger of the two distances.  Trust me, the math works out.
+	 *
+	 * @param numGreats
+	 * @return
+	 */
+	public CommonAncestor withGreats(int numGreats) {
+		return distanceFromFirst > distanceFromSecond
+				? valueOf(distanceFromFirst + numGreats, distanceFromSecond)
+				: valueOf(distanceFromFirst, distanceFromSecond + numGreats);
 	}
 
-	public Object clone() {
-		return new CommonAncestor(distanceFromFirst, distanceFromSecond);
+	/**
+	 * 'Add' this ancestor to another one, i.e. the ancestor of the first person's relative
+	 * that is related to them via other.
+	 *
+	 * @param other
+	 * @return
+	 */
+	public CommonAncestor plus(CommonAncestor other) {
+		return valueOf(distanceFromFirst + other.distanceFromFirst,
+				distanceFromSecond + other.distanceFromSecond);
 	}
 
 	@Override
@@ -0,0 +1,227 @@
+package com.nolanlawson.relatedness;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Exact value of a relatedness coefficient.  Every coefficient is a sum of powers of 1/2,
+ * times the relatedness factor, so it can always be written as numerator / 2^exponent.
+ * 
+ * Values are normalized (the numerator is odd, or zero), so equals(), hashCode() and compareTo() 
+ * are all exact and only need integer operations.  The numerator is a long whenever it fits, which
+ * covers every real relation, so that plus() and compareTo() don't allocate anything beyond the 
+ * result.  Common ancestors at very different degrees, e.g. 1 and 80, need more than 64 bits to add 
+ * up exactly, so past that the numerator is a BigInteger instead.
+ * 
+ * @author nolan
+ *
+ */
+public final class ExactCoefficient implements Comparable<ExactCoefficient> {
+
+	public static final ExactCoefficient ZERO = new ExactCoefficient(0, null, 0);
+	public static final ExactCoefficient ONE = new ExactCoefficient(1, null, 0);
+	
+	// largest numerator that a double can hold exactly
+	private static final int DOUBLE_PRECISION = 53;
+	
+	// exactly one of these is used: bigNumerator is null unless the numerator needs 64 bits or more
+	private final long numerator;
+	private final BigInteger bigNumerator;
+	private final int exponent;
+	
+	private ExactCoefficient(long numerator, BigInteger bigNumerator, int exponent) {
+		this.numerator = numerator;
+		this.bigNumerator = bigNumerator;
+		this.exponent = exponent;
+	}
+	
+	/**
+	 * The value numerator / 2^exponent.  The exponent may be negative, e.g. for whole numbers.
+	 * @param numerator
+	 * @param exponent
+	 * @return
+	 */
+	public static ExactCoefficient valueOf(long numerator, int exponent) {
+		Preconditions.checkArgument(numerator >= 0, "negative coefficient: %s", numerator);
+		if (numerator == 0) {
+			return ZERO;
+		}
+		int trailingZeros = Long.numberOfTrailingZeros(numerator);
+		return new ExactCoefficient(numerator >>> trailingZeros, null, exponent - trailingZeros);
+	}
+	
+	/**
+	 * The value numerator / 2^exponent.  The exponent may be negative, e.g. for whole numbers.
+	 * @param numerator
+	 * @param exponent
+	 * @return
+	 */
+	public static ExactCoefficient valueOf(BigInteger numerator, int exponent) {
+		Preconditions.checkArgument(numerator.signum() >= 0, "negative coefficient: %s", numerator);
+		if (numerator.signum() == 0) {
+			return ZERO;
+		}
+		int trailingZeros = numerator.getLowestSetBit();
+		BigInteger normalized = numerator.shiftRight(trailingZeros);
+		if (normalized.bitLength() < Long.SIZE) {
+			return new ExactCoefficient(normalized.longValue(), null, exponent - trailingZeros);
+		}
+		return new ExactCoefficient(0, normalized, exponent - trailingZeros);
+	}
+	
+	/**
+	 * The exact value of the given double, which must be non-negative and finite.
+	 * @param value
+	 * @return
+	 * @see #isRepresentable(double)
+	 */
+	public static ExactCoefficient valueOf(double value) {
+		Preconditions.checkArgument(isRepresentable(value), "invalid coefficient: %s", value);
+		if (value == 0) {
+			return ZERO;
+		}
+		// scale up to a whole 53-bit number, which is always exact for a double
+		int shift = 52 - Math.getExponent(value);
+		long numerator = (long) Math.scalb(value, shift);
+		return valueOf(numerator, shift);
+	}
+	
+	/**
+	 * True if valueOf(double) accepts the value, i.e. it's non-negative and finite.
+	 * @param value
+	 * @return
+	 */
+	public static boolean isRepresentable(double value) {
+		return value >= 0 && !Double.isInfinite(value);
+	}
+	
+	/**
+	 * (1/2)^degree, i.e. the portion of relatedness due to a single common ancestor.
+	 * @param degree
+	 * @return
+	 */
+	public static ExactCoefficient powerOfOneHalf(int degree) {
+		return new ExactCoefficient(1, null, degree);
+	}
+	
+	public ExactCoefficient plus(ExactCoefficient other) {
+		if (isZero()) {
+			return other;
+		} else if (other.isZero()) {
+			return this;
+		} else if (exponent < other.exponent) {
+			return other.plus(this);
+		}
+		// this has the larger exponent, so scale the other one up to match
+		int shift = exponent - other.exponent;
+		if (bigNumerator == null && other.bigNumerator == null && shift < Long.numberOfLeadingZeros(other.numerator)) {
+			// both are non-negative, so the sum only overflows if it comes out negative
+			long sum = (other.numerator << shift) + numerator;
+			if (sum >= 0) {
+				return valueOf(sum, exponent);
+			}
+		}
+		return valueOf(other.getNumerator().shiftLeft(shift).add(getNumerator()), exponent);
+	}
+	
+	public ExactCoefficient times(int factor) {
+		Preconditions.checkArgument(factor >= 0, "negative factor: %s", factor);
+		if (bigNumerator == null && (factor == 0 || numerator <= Long.MAX_VALUE / factor)) {
+			return valueOf(numerator * factor, exponent);
+		}
+		return valueOf(getNumerator().multiply(BigInteger.valueOf(factor)), exponent);
+	}
+	
+	public BigInteger getNumerator() {
+		return bigNumerator != null ? bigNumerator : BigInteger.valueOf(numerator);
+	}
+	
+	public int getExponent() {
+		return exponent;
+	}
+	
+	/**
+	 * The nearest double to this value.
+	 * @return
+	 */
+	public double doubleValue() {
+		if (bigNumerator == null && Long.SIZE - Long.numberOfLeadingZeros(numerator) <= DOUBLE_PRECISION) {
+			// exact numerator, so there's only the one rounding in scalb()
+			return Math.scalb((double) numerator, -exponent);
+		}
+		BigInteger exactNumerator = getNumerator();
+		if (exponent <= 0) {
+			return exactNumerator.shiftLeft(-exponent).doubleValue();
+		}
+		// n / 2^e = (n * 5^e) / 10^e, which BigDecimal rounds correctly
+		return new BigDecimal(exactNumerator.multiply(BigInteger.valueOf(5).pow(exponent)), exponent).doubleValue();
+	}
+	
+	public int compareTo(ExactCoefficient other) {
+		if (isZero() || other.isZero()) {
+			// zero's exponent says nothing about its size
+			return (isZero() ? 0 : 1) - (other.isZero() ? 0 : 1);
+		} else if (exponent < other.exponent) {
+			return -other.compareTo(this);
+		}
+		// this has the larger exponent, so scale the other one up to match
+		int shift = exponent - other.exponent;
+		if (bigNumerator == null && other.bigNumerator == null) {
+			if (shift >= Long.numberOfLeadingZeros(other.numerator)) {
+				return -1; // the other one scaled up doesn't even fit in a long, so it's bigger
+			}
+			long otherNumerator = other.numerator << shift;
+			return numerator < otherNumerator ? -1 : (numerator == otherNumerator ? 0 : 1);
+		}
+		return getNumerator().compareTo(other.getNumerator().shiftLeft(shift));
+	}
+	
+	private boolean isZero() {
+		return bigNumerator == null && numerator == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + exponent;
+		result = prime * result + (int) (numerator ^ (numerator >>> 32));
+		result = prime * result + ((bigNumerator == null) ? 0 : bigNumerator.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		ExactCoefficient other = (ExactCoefficient) obj;
+		if (exponent != other.exponent)
+			return false;
+		if (numerator != other.numerator)
+			return false;
+		if (bigNumerator == null) {
+			if (other.bigNumerator != null)
+				return false;
+		} else if (!bigNumerator.equals(other.bigNumerator))
+			return false;
+		return true;
+	}
+
+	/**
+	 * Fraction string, e.g. "1/64", "3/8", or "1".
+	 */
+	@Override
+	public String toString() {
+		if (exponent <= 0) {
+			return getNumerator().shiftLeft(-exponent).toString();
+		}
+		return new StringBuilder().append(getNumerator()).append('/')
+				.append(BigInteger.ONE.shiftLeft(exponent)).toString();
+	}
+}
@@ -0,0 +1,88 @@
+package com.nolanlawson.relatedness;
+
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Compact encoding of a Relation as a plain int[], for when lots of relations need to be
+ * stored or scored without allocating objects for each one.
+ * 
+ * The first int is the relatedness factor.  Each following int is one common ancestor, with the
+ * distance from the first person in the high 16 bits and the distance from the second person
+ * in the low 16 bits.
+ * 
+ * @author nolan
+ *
+ */
+public class PackedRelation {
+
+	private static final int SHIFT = 16;
+	private static final int MASK = 0xFFFF;
+	
+	/**
+	 * Largest distance that fits in the encoding.
+	 */
+	public static final int MAX_DISTANCE = MASK;
+	
+	private PackedRelation() {
+	}
+	
+	public static int[] pack(Relation relation) {
+		List<CommonAncestor> commonAncestors = relation.getCommonAncestors();
+		int[] result = new int[commonAncestors.size() + 1];
+		result[0] = relation.getRelatednessFactor();
+		for (int i = 0; i < commonAncestors.size(); i++) {
+			CommonAncestor commonAncestor = commonAncestors.get(i);
+			result[i + 1] = packAncestor(commonAncestor.getDistanceFromFirst(), 
+					commonAncestor.getDistanceFromSecond());
+		}
+		return result;
+	}
+	
+	public static Relation unpack(int[] packedRelation) {
+		CommonAncestor[] commonAncestors = new CommonAncestor[getNumCommonAncestors(packedRelation)];
+		for (int i = 0; i < commonAncestors.length; i++) {
+			commonAncestors[i] = CommonAncestor.valueOf(getDistanceFromFirst(packedRelation, i), 
+					getDistanceFromSecond(packedRelation, i));
+		}
+		return new Relation(getRelatednessFactor(packedRelation), commonAncestors);
+	}
+	
+	/**
+	 * Pack a single common ancestor into an int.
+	 * @param distanceFromFirst
+	 * @param distanceFromSecond
+	 * @return
+	 */
+	public static int packAncestor(int distanceFromFirst, int distanceFromSecond) {
+		Preconditions.checkArgument(distanceFromFirst >= 0 && distanceFromFirst <= MAX_DISTANCE
+				&& distanceFromSecond >= 0 && distanceFromSecond <= MAX_DISTANCE, 
+				"distance out of range: %s, %s", distanceFromFirst, distanceFromSecond);
+		return (distanceFromFirst << SHIFT) | distanceFromSecond;
+	}
+	
+	public static int getRelatednessFactor(int[] packedRelation) {
+		return packedRelation[0];
+	}
+	
+	public static int getNumCommonAncestors(int[] packedRelation) {
+		return packedRelation.length - 1;
+	}
+	
+	public static int getDistanceFromFirst(int[] packedRelation, int ancestorIdx) {
+		return packedRelation[ancestorIdx + 1] >>> SHIFT;
+	}
+	
+	public static int getDistanceFromSecond(int[] packedRelation, int ancestorIdx) {
+		return packedRelation[ancestorIdx + 1] & MASK;
+	}
+	
+	/**
+	 * Total generation distance via the given common ancestor.
+	 */
+	public static int getDegree(int[] packedRelation, int ancestorIdx) {
+		int packedAncestor = packedRelation[ancestorIdx + 1];
+		return (packedAncestor >>> SHIFT) + (packedAncestor & MASK);
+	}
+}
@@ -4,21 +4,57 @@ public class Relatedness {
 
 	private double averageDegree;
 	private double coefficient;
+	private Relation relation;
+	private ExactCoefficient exactCoefficient;
 	
 	public Relatedness(double averageDegree, double coefficient) {
 		this.averageDegree = averageDegree;
 		this.coefficient = coefficient;
+		if (ExactCoefficient.isRepresentable(coefficient)) {
+			this.exactCoefficient = ExactCoefficient.valueOf(coefficient);
+		}
 	}
+	
+	public Relatedness(double averageDegree, ExactCoefficient exactCoefficient) {
+		this.averageDegree = averageDegree;
+		this.coefficient = exactCoefficient.doubleValue();
+		this.exactCoefficient = exactCoefficient;
+	}
+	
+	/**
+	 * Used by the calculator, which only works out the exact coefficient if it's asked for.
+	 */
+	Relatedness(double averageDegree, double coefficient, Relation relation) {
+		this.averageDegree = averageDegree;
+		this.coefficient = coefficient;
+		this.relation = relation;
+	}
+	
 	public double getAverageDegree() {
 		return averageDegree;
 	}
 	public double getCoefficient() {
 		return coefficient;
 	}
+	/**
+	 * The coefficient as an exact fraction, e.g. 1/64, for when it has to be compared, grouped or
+	 * displayed without any rounding.
+	 * @return the exact coefficient, or null if this was constructed from a double that can't be
+	 * one, e.g. NaN
+	 */
+	public ExactCoefficient getExactCoefficient() {
+		// racy but harmless, since every thread would compute the same immutable value
+		ExactCoefficient result = exactCoefficient;
+		if (result == null && relation != null) {
+			result = RelatednessCalculator.calculateExact(relation);
+			exactCoefficient = result;
+		}
+		return result;
+	}
 	
 	@Override
 	public String toString() {
 		return "Relatedness [averageDegree=" + averageDegree + ", coefficient=" + coefficient
-				+ "]";
+				+ ", exactCoefficient=" + getExactCoefficient() + "]";
 	}
 }
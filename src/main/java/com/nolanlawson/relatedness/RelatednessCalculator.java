@@ -1,8 +1,5 @@
 package com.nolanlawson.relatedness;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * 
  * Calculates the Relatedness between two people.  Richard Dawkins gives a good explanation
@@ -57,6 +54,22 @@ import java.util.List;
  */
 public class RelatednessCalculator {
 
+	// (1/2)^g for every degree g we're ever likely to see
+	private static final double[] POWERS_OF_ONE_HALF = new double[64];
+	static {
+		for (int i = 0; i < POWERS_OF_ONE_HALF.length; i++) {
+			POWERS_OF_ONE_HALF[i] = Math.scalb(1.0, -i);
+		}
+	}
+
+	/**
+	 * Index of the average degree in the output of calculate(int[], double[], int)
+	 */
+	public static final int AVERAGE_DEGREE_OFFSET = 0;
+	/**
+	 * Index of the coefficient in the output of calculate(int[], double[], int)
+	 */
+	public static final int COEFFICIENT_OFFSET = 1;
 
 	/**
 	 * TODO: allow for multiple common ancestors at different degrees (corner case)
@@ -67,28 +80,64 @@ public class RelatednessCalculator {
 	public static Relatedness calculate(Relation relation) {
 		
 		// calculate average degree, in the case where more than one common ancestor is shared at multiple levels
-		List<Integer> degrees = new ArrayList<Integer>();
+		int degreeSum = 0;
 		double coefficient = 0.0;
 
 		for (CommonAncestor commonAncestor : relation.getCommonAncestors()) {
 			int degree = commonAncestor.getDistanceFromFirst() + commonAncestor.getDistanceFromSecond();
-			degrees.add(degree);
-			coefficient += Math.pow(0.5, degree);
+			degreeSum += degree;
+			coefficient += powerOfOneHalf(degree);
 		}
 		
 		coefficient *= relation.getRelatednessFactor();
 		
-		double averageDegree = calculateAverage(degrees);
+		double averageDegree = ((double) degreeSum) / relation.getCommonAncestors().size();
 		
-		return new Relatedness(averageDegree, coefficient);
+		// the exact coefficient is only worked out if someone asks for it
+		return new Relatedness(averageDegree, coefficient, relation);
+	}
+	
+	/**
+	 * The coefficient of the relation as an exact fraction, which works at any degree.
+	 * 
+	 * @param relation
+	 * @return
+	 */
+	public static ExactCoefficient calculateExact(Relation relation) {
+		ExactCoefficient coefficient = ExactCoefficient.ZERO;
+		for (CommonAncestor commonAncestor : relation.getCommonAncestors()) {
+			int degree = commonAncestor.getDistanceFromFirst() + commonAncestor.getDistanceFromSecond();
+			coefficient = coefficient.plus(ExactCoefficient.powerOfOneHalf(degree));
+		}
+		return coefficient.times(relation.getRelatednessFactor());
 	}
 
-	private static double calculateAverage(List<Integer> degrees) {
-		double sum = 0;
-		for (Integer degree : degrees) {
-			sum += degree;
+	/**
+	 * Same as the other method, but for a relation encoded with PackedRelation, and without 
+	 * allocating anything.  The average degree is written to output[offset + AVERAGE_DEGREE_OFFSET]
+	 * and the coefficient to output[offset + COEFFICIENT_OFFSET], so many results can be
+	 * written into a single array.
+	 * 
+	 * @param packedRelation
+	 * @param output
+	 * @param offset
+	 */
+	public static void calculate(int[] packedRelation, double[] output, int offset) {
+		int numCommonAncestors = PackedRelation.getNumCommonAncestors(packedRelation);
+		int degreeSum = 0;
+		double coefficient = 0.0;
+		
+		for (int i = 0; i < numCommonAncestors; i++) {
+			int degree = PackedRelation.getDegree(packedRelation, i);
+			degreeSum += degree;
+			coefficient += powerOfOneHalf(degree);
 		}
-		return sum / degrees.size();
+		
+		output[offset + AVERAGE_DEGREE_OFFSET] = ((double) degreeSum) / numCommonAncestors;
+		output[offset + COEFFICIENT_OFFSET] = coefficient * PackedRelation.getRelatednessFactor(packedRelation);
 	}
 	
+	private static double powerOfOneHalf(int degree) {
+		return degree < POWERS_OF_ONE_HALF.length ? POWERS_OF_ONE_HALF[degree] : Math.scalb(1.0, -degree);
+	}
 }
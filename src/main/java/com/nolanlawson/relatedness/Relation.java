@@ -1,89 +1,137 @@
 package com.nolanlawson.relatedness;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
 /**
  * Relation between two people, e.g. brother-sister, son-daughter, cousin-cousin.
+ *
+ * Immutable, so relations can be shared between threads and used as keys.  Operations like
+ * withGreats() and compose() return new relations instead of modifying this one.
  * @author nolan
  *
  */
-public class Relation implements Cloneable {
+public final class Relation {
+
+	private static final Interner<Relation> INTERNER = Interners.newWeakInterner();
+
+	private final ImmutableList<CommonAncestor> commonAncestors;
 
-	private List<CommonAncestor> commonAncestors;
-	
 	// normally 1.  Basically just a fix for identical twins, whose relatedness
 	// cannot be calculated only by looking at common ancestors
-	private int relatednessFactor;
-	
+	private final int relatednessFactor;
+
+	private final int hashCode;
+
 	public Relation(CommonAncestor... commonAncestors) {
 		this(1, commonAncestors);
 	}
-	
+
 	public Relation(List<CommonAncestor> commonAncestors) {
 		this(1, commonAncestors);
 	}
-	
+
 	public Relation(int relatednessFactor, CommonAncestor... commonAncestors) {
 		this(relatednessFactor, Arrays.asList(commonAncestors));
 	}
-	
+
 	public Relation(int relatednessFactor, List<CommonAncestor> commonAncestors) {
-	    this.relatednessFactor = relatednessFactor;
-	    this.commonAncestors = commonAncestors;
+		this.relatednessFactor = relatednessFactor;
+		this.commonAncestors = ImmutableList.copyOf(commonAncestors);
+		this.hashCode = 31 * this.commonAncestors.hashCode() + relatednessFactor;
 	}
 
+	/**
+	 * @return an unmodifiable list
+	 */
 	public List<CommonAncestor> getCommonAncestors() {
 		return commonAncestors;
 	}
-	
+
 	public int getRelatednessFactor() {
-	    return relatednessFactor;
+		return relatednessFactor;
 	}
-	
-	public Object clone() {
-		List<CommonAncestor> newCommonAncestors = new ArrayList<CommonAncestor>();
+
+	/**
+	 * Apply any number of "greats" to this relation, e.g. to go from uncle to great-uncle.
+	 * @param numGreats
+	 * @return
+	 */
+	public Relation withGreats(int numGreats) {
+		ImmutableList.Builder<CommonAncestor> builder = ImmutableList.builder();
 		for (CommonAncestor commonAncestor : commonAncestors) {
-			newCommonAncestors.add((CommonAncestor)commonAncestor.clone());
+			builder.add(commonAncestor.withGreats(numGreats));
 		}
-		return new Relation(relatednessFactor, newCommonAncestors);
+		return new Relation(relatednessFactor, builder.build()).intern();
+	}
+
+	/**
+	 * Make this a "half" relation, e.g. to go from sister to half-sister.  All this requires is
+	 * dropping one of the common ancestors, e.g. in the case of half-siblings, it's one of the parents.
+	 * @return
+	 */
+	public Relation withHalf() {
+		return new Relation(relatednessFactor, commonAncestors.subList(1, commonAncestors.size())).intern();
+	}
+
+	/**
+	 * 'Add' another relation to this one, e.g. to go from "dad" and "cousin" to "dad's cousin."  It
+	 * only seems to work when you don't have two common ancestors in both relations, and if you
+	 * don't do something self-referential like "father's son's father's son's father..."
+	 *
+	 * @param other the relation of the other person to this relative
+	 * @return
+	 */
+	public Relation compose(Relation other) {
+		ImmutableList.Builder<CommonAncestor> builder = ImmutableList.builder();
+		for (CommonAncestor ancestor1 : commonAncestors) {
+			for (CommonAncestor ancestor2 : other.commonAncestors) {
+				// add their distances together
+				builder.add(ancestor1.plus(ancestor2));
+			}
+		}
+		return new Relation(relatednessFactor * other.relatednessFactor, builder.build()).intern();
+	}
+
+	/**
+	 * Returns a canonical instance that's equal to this relation, like String.intern().  Commonly
+	 * used relations are then shared instead of reallocated.
+	 * @return
+	 */
+	public Relation intern() {
+		return INTERNER.intern(this);
 	}
 
 	@Override
 	public int hashCode() {
-	    final int prime = 31;
-	    int result = 1;
-	    result = prime
-		    * result
-		    + ((commonAncestors == null) ? 0 : commonAncestors
-			    .hashCode());
-	    result = prime * result + relatednessFactor;
-	    return result;
+		return hashCode;
 	}
 
 	@Override
 	public boolean equals(Object obj) {
-	    if (this == obj)
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		Relation other = (Relation) obj;
+		if (hashCode != other.hashCode)
+			return false;
+		if (relatednessFactor != other.relatednessFactor)
+			return false;
+		if (!commonAncestors.equals(other.commonAncestors))
+			return false;
 		return true;
-	    if (obj == null)
-		return false;
-	    if (getClass() != obj.getClass())
-		return false;
-	    Relation other = (Relation) obj;
-	    if (commonAncestors == null) {
-		if (other.commonAncestors != null)
-		    return false;
-	    } else if (!commonAncestors.equals(other.commonAncestors))
-		return false;
-	    if (relatednessFactor != other.relatednessFactor)
-		return false;
-	    return true;
 	}
 
 	@Override
 	public String toString() {
-	    return "Relation [commonAncestors=" + commonAncestors
-		    + ", relatednessFactor=" + relatednessFactor + "]";
+		return "Relation [commonAncestors=" + commonAncestors
+				+ ", relatednessFactor=" + relatednessFactor + "]";
 	}
 }
@@ -16,25 +16,28 @@ import static com.nolanlawson.relatedness.BasicRelation.SeventhCousin;
 import static com.nolanlawson.relatedness.BasicRelation.SixthCousin;
 import static com.nolanlawson.relatedness.BasicRelation.ThirdCousin;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
-import com.google.common.base.Function;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.nolanlawson.relatedness.BasicRelation;
-import com.nolanlawson.relatedness.UnknownRelationException;
+import com.nolanlawson.relatedness.RelationType;
 import com.nolanlawson.relatedness.parser.ParseVocabulary;
 import com.nolanlawson.relatedness.parser.RelationParseResult;
 import com.nolanlawson.relatedness.parser.RelativeNameParser;
-import com.nolanlawson.relatedness.util.Trie;
+import com.nolanlawson.relatedness.util.CompiledTrie;
 
 /**
  * Used for autosuggesting relations.
@@ -43,6 +46,9 @@ import com.nolanlawson.relatedness.util.Trie;
  * from scratch with a Finite State Transducer or something. This is just ugly
  * as hell. But hey, at least it works.
  * 
+ * A RelationSuggester is immutable once it's constructed, and suggest() doesn't lock anything, so 
+ * a single instance can (and should) be shared by every thread.  getInstance() returns a shared one.
+ * 
  * @author nolan
  * 
  */
@@ -71,22 +77,93 @@ public class RelationSuggester {
 	    .put(SixthCousin, 1.0 / 5).put(SeventhCousin, 1.0 / 6)
 	    .put(EighthCousin, 1.0 / 7).build();
 
-    private Trie<Double> trie;
+    private static final RelationType[] RELATION_TYPES = RelationType.values();
+
+    // typo tolerance, e.g. "cusin" or "neice".  Each edit divides the weight by 4, and the search gives
+    // up after visiting a few thousand trie nodes (well under a millisecond), so that a slow one 
+    // doesn't hold up the next keystroke.  Typical typos need fewer than 100.
+    private static final int MIN_LENGTH_FOR_ONE_EDIT = 3;
+    private static final int MIN_LENGTH_FOR_TWO_EDITS = 6;
+    private static final float EDIT_DISCOUNT = 0.25F;
+    private static final int TYPO_MAX_VISITS = 5000;
+
+    // each suggestion is tagged with the ordinal of its RelationType when it comes after a possessive,
+    // e.g. "grandpa's X".  Suggestions that can never come after a possessive (e.g. "cousin once removed") 
+    // aren't tagged.
+    private final CompiledTrie trie;
 
     public RelationSuggester() {
-	initTrie();
+	trie = buildTrie(generateSuggestions());
+    }
+
+    /**
+     * Load a suggester from a snapshot written by writeSnapshot(), which is much faster than building
+     * one from scratch.  The snapshot is memory-mapped, so processes on the same machine share it.
+     * Snapshots have to be regenerated whenever the vocabulary or the relation types change; loading
+     * an out-of-date one fails with an IOException.
+     * 
+     * @param snapshot
+     * @throws IOException
+     */
+    public RelationSuggester(File snapshot) throws IOException {
+	trie = CompiledTrie.map(snapshot, fingerprint(generateSuggestions()));
+	for (int entry = 0; entry < trie.size(); entry++) {
+	    int relationType = trie.getTag(entry);
+	    if (relationType != CompiledTrie.NO_TAG && (relationType < 0 || relationType >= RELATION_TYPES.length)) {
+		throw new IOException(snapshot + " has an unknown relation type: " + relationType);
+	    }
+	}
+    }
+
+    /**
+     * Write everything needed to load this suggester again to the given file.
+     * 
+     * @param snapshot
+     * @throws IOException
+     */
+    public void writeSnapshot(File snapshot) throws IOException {
+	trie.writeTo(snapshot);
+    }
+
+    /**
+     * The shared suggester, which is built the first time this is called.
+     * 
+     * @return
+     */
+    public static RelationSuggester getInstance() {
+	return InstanceHolder.INSTANCE;
     }
 
-    private void initTrie() {
-	trie = Trie.newTrie();
-	List<WeightedRelation> suggestions = generateSuggestions();
+    private static CompiledTrie buildTrie(List<WeightedRelation> suggestions) {
+	Map<String, Double> weights = Maps.newHashMap();
+	Map<String, Integer> relationTypes = Maps.newHashMap();
 	for (WeightedRelation suggestion : suggestions) {
-	    trie.put(suggestion.getRelation(), suggestion.getWeight());
+	    weights.put(suggestion.getRelation(), suggestion.getWeight());
+	    
+	    RelationParseResult parseResult = RelativeNameParser.tryParse(suggestion.getRelation());
+	    if (parseResult.getParseError() == null) {
+		relationTypes.put(suggestion.getRelation(), 
+			RelationType.fromRelation(parseResult.getRelation()).ordinal());
+	    }
 	}
-	trie.compile();
+	return CompiledTrie.build(weights, relationTypes, fingerprint(suggestions));
     }
 
-    private List<WeightedRelation> generateSuggestions() {
+    // identifies everything a snapshot depends on: the suggestions themselves (cheap to generate;
+    // it's parsing them that's slow) and the relation types that the tags refer to by ordinal
+    private static long fingerprint(List<WeightedRelation> suggestions) {
+	long result = RELATION_TYPES.length;
+	for (RelationType relationType : RELATION_TYPES) {
+	    result = 31 * result + relationType.name().hashCode();
+	}
+	for (WeightedRelation suggestion : suggestions) {
+	    result = 31 * result + suggestion.getRelation().hashCode();
+	    result = 31 * result + Double.doubleToLongBits(suggestion.getWeight());
+	}
+	return result;
+    }
+
+    private static List<WeightedRelation> generateSuggestions() {
 	List<WeightedRelation> result = Lists.newArrayList();
 	for (Entry<BasicRelation, Collection<String>> entry : ParseVocabulary.VOCABULARY.asMap().entrySet()) {
 	    BasicRelation basicRelation = entry.getKey();
@@ -166,54 +243,64 @@ public class RelationSuggester {
 	return result;
     }
 
+    /**
+     * Suggest up to limit relative names that complete the input, best first.  Matching is
+     * case-insensitive, and the suggestions are all lowercase, e.g. "Mom's Sis" gives "mom's sister."
+     * 
+     * @param input
+     * @param limit
+     * @return
+     */
     public List<String> suggest(String input, int limit) {
-	// sort by weight, then the relation string, then limit the list and
-	// return it
-	List<WeightedRelation> result = Lists.newArrayList(Iterables.transform(
-		trie.getAll(input.toLowerCase()),
-		WeightedRelation.fromTrieLeafFunction));
+	// everything in the trie is lowercase, so compound names are built from the lowercase input too
+	String lowercaseInput = input.toLowerCase();
+	List<WeightedRelation> result = Lists.newArrayList();
+	// nothing past the top few direct matches could make it into the final list
+	CompiledTrie.EntryIterator topEntries = trie.getBestEntries(lowercaseInput);
+	while (result.size() < limit && topEntries.hasNext()) {
+	    result.add(WeightedRelation.fromTrieEntry(trie, topEntries.next()));
+	}
 
-	// get the weight of the shortest string.  This is used to 
+	// get the weight of the input itself, if it's a relation.  This is used to 
 	// de-prioritze all compound relations relative to the input non-compound relation
 	// e.g so we get "grandpa" and "grandparent" before "grandpa's X"
-	double originalWeight = result.isEmpty() ? 0.5 : Ordering.natural().onResultOf(new Function<WeightedRelation, Integer>(){
-	    
-	    public Integer apply(WeightedRelation input) {
-		return input.getRelation().length();
-	    }
-	    
-	}).min(result).getWeight() / 2;
+	int exactEntry = trie.getEntry(lowercaseInput);
+	double originalWeight = exactEntry == CompiledTrie.NO_ENTRY ? 0.5 : trie.getWeight(exactEntry) / 2;
 	
-	if (Iterables.contains(Iterables.transform(result,
-		WeightedRelation.getRelationFunction), input.toLowerCase())) {
-	    // there's very few results and it contains the same name as the
-	    // input (e.g. "grandpa"), so expand it with
+	if (exactEntry != CompiledTrie.NO_ENTRY) {
+	    // the input is the same as one of the names
+	    // (e.g. "grandpa"), so expand it with
 	    // possible additional relations, such as "grandpa's cousin" or
 	    // "grandpa's second cousin"
-	    result.addAll(expandWithCompoundRelations(0, input, "", limit, originalWeight));
+	    result.addAll(expandWithCompoundRelations(0, lowercaseInput, "", limit, originalWeight));
 	}
 	// also account for cases where the user has just typed "'", "'s", or
 	// "'s "
 	String fullPossessive = ParseVocabulary.POSSESSIVE + " ";
 	for (int i = 0; i < fullPossessive.length(); i++) {
-	    if (input.endsWith(fullPossessive.substring(0,
+	    if (lowercaseInput.endsWith(fullPossessive.substring(0,
 		    fullPossessive.length() - i))) {
 		result.addAll(expandWithCompoundRelations(
-			fullPossessive.length() - i, input, "", limit, originalWeight));
+			fullPossessive.length() - i, lowercaseInput, "", limit, originalWeight));
 	    }
 	}
 	// next, account for cases where the user typed 's plus something else
-	int lastIndexOfPossessive = input.lastIndexOf(fullPossessive);
+	int lastIndexOfPossessive = lowercaseInput.lastIndexOf(fullPossessive);
 	int endOfLastPossessive = lastIndexOfPossessive
 		+ fullPossessive.length();
 	if (lastIndexOfPossessive != -1
-		&& endOfLastPossessive < input.length() - 1) {
-	    String postPossessiveString = input.substring(endOfLastPossessive);
+		&& endOfLastPossessive < lowercaseInput.length() - 1) {
+	    String postPossessiveString = lowercaseInput.substring(endOfLastPossessive);
 	    result.addAll(expandWithCompoundRelations(0,
-		    input.substring(0, lastIndexOfPossessive),
+		    lowercaseInput.substring(0, lastIndexOfPossessive),
 		    postPossessiveString, limit, originalWeight));
 	}
 
+	// nothing starts with the input, so maybe it has a typo, e.g. "cusin"
+	if (result.isEmpty()) {
+	    result.addAll(suggestWithTypos(lowercaseInput, limit));
+	}
+
 	// sort, limit, and transform
 
 	return Lists.newArrayList(Iterables.transform(
@@ -221,59 +308,78 @@ public class RelationSuggester {
 		WeightedRelation.getRelationFunction));
     }
 
+    private List<WeightedRelation> suggestWithTypos(String input, int limit) {
+	// short inputs are within a couple of edits of nearly everything
+	int maxEdits = input.length() >= MIN_LENGTH_FOR_TWO_EDITS ? 2 
+		: input.length() >= MIN_LENGTH_FOR_ONE_EDIT ? 1 : 0;
+	if (maxEdits == 0) {
+	    return Collections.emptyList();
+	}
+	CompiledTrie.EntryIterator entries = trie.getFuzzyEntries(input, maxEdits, EDIT_DISCOUNT, 
+		TYPO_MAX_VISITS);
+	List<WeightedRelation> result = Lists.newArrayList();
+	while (result.size() < limit && entries.hasNext()) {
+	    int entry = entries.next();
+	    result.add(new WeightedRelation(trie.getKey(entry), 
+		    trie.getWeight(entry) * Math.pow(EDIT_DISCOUNT, entries.getEdits())));
+	}
+	return result;
+    }
+
     private List<WeightedRelation> expandWithCompoundRelations(
-	    final int possessiveStringIndex, final String input,
-	    String searchString, int limit, final double originalWeight) {
+	    int possessiveStringIndex, String input,
+	    String searchString, int limit, double originalWeight) {
 
-	final String fullPossessive = ParseVocabulary.POSSESSIVE + " ";
+	String fullPossessive = ParseVocabulary.POSSESSIVE + " ";
 
 	// have to check and make sure we don't add nonsensical relations, like
-	// "cousin's uncle"
-	List<WeightedRelation> allPossibleWeightedRelations = Lists
-		.newArrayList(Iterables.transform(trie.getAll(searchString),
-			WeightedRelation.fromTrieLeafFunction));
-
-	// order them first, so we don't waste too much time checking them all
-	List<WeightedRelation> sortedPossibleRelations = Lists
-		.newArrayList(Iterables.transform(Ordering.natural()
-			.sortedCopy(allPossibleWeightedRelations),
-			new Function<WeightedRelation, WeightedRelation>() {
-
-			    public WeightedRelation apply(
-				    WeightedRelation weightedRelation) {
-				String relationName = input
-					+ fullPossessive
-						.substring(possessiveStringIndex)
-					+ weightedRelation.getRelation();
-				double weight = weightedRelation.getWeight() * originalWeight; // reduce the weight
-										  // for
-										  // compound
-										  // relations
-										  // to
-										  // de-prioritize
-										  // them
-				return new WeightedRelation(relationName,
-					weight);
-			    }
-			}));
+	// "cousin's uncle".  Parse the part before the possessive once, so that most
+	// of the nonsensical ones can be thrown out just by looking at their RelationType
+	RelationParseResult prefixParseResult = RelativeNameParser.tryParse(
+		input.substring(0, input.length() - possessiveStringIndex));
+	if (prefixParseResult.getParseError() != null) {
+	    // if the start doesn't make sense, then nothing after it will either
+	    return Collections.emptyList();
+	}
+	// the overall relation type allows the same things to follow it as the type of the last
+	// relation in the prefix, e.g. "dad's cousin's daughter" is arcing, and so is "cousin"
+	RelationType prefixRelationType = RelationType.fromRelation(prefixParseResult.getRelation());
+	
+	// walk the trie best-first, so we don't waste too much time checking them all
+	CompiledTrie.EntryIterator sortedPossibleRelations = trie.getBestEntries(searchString);
+
+	// every candidate starts the same way, so only its key needs to be appended
+	StringBuilder relationNameBuilder = new StringBuilder(input)
+		.append(fullPossessive.substring(possessiveStringIndex));
+	int prefixLength = relationNameBuilder.length();
 
 	List<WeightedRelation> result = Lists.newArrayList();
 	// check one-by-one that the relation makes sense
-	for (WeightedRelation possibleRelation : sortedPossibleRelations) {
-	    if (result.size() >= limit) {
-		break;
-	    } else {
-		try {
-		    RelationParseResult parseResult = RelativeNameParser
-			    .parse(possibleRelation.getRelation());
-		    if (parseResult.getParseError() == null) { // no error, so
-							       // add
-			result.add(possibleRelation);
-		    }
-		} catch (UnknownRelationException ignore) {
-		}
+	while (result.size() < limit && sortedPossibleRelations.hasNext()) {
+	    int entry = sortedPossibleRelations.next();
+	    int relationType = trie.getTag(entry);
+	    if (relationType == CompiledTrie.NO_TAG 
+		    || !RelationType.isValidProgression(prefixRelationType, RELATION_TYPES[relationType])) {
+		continue; // thrown out without ever building the key
+	    }
+	    relationNameBuilder.setLength(prefixLength);
+	    trie.appendKey(entry, relationNameBuilder);
+	    String relationName = relationNameBuilder.toString();
+	    
+	    // only the few that made it this far need the full parse
+	    RelationParseResult parseResult = RelativeNameParser.tryParse(relationName);
+	    if (parseResult.getParseError() == null) { // no error, so
+						       // add
+		// reduce the weight for compound relations to de-prioritize them
+		result.add(new WeightedRelation(relationName, trie.getWeight(entry) * originalWeight));
 	    }
 	}
 	return result;
     }
+
+    // only initialized when getInstance() is first called
+    private static class InstanceHolder {
+
+	static final RelationSuggester INSTANCE = new RelationSuggester();
+    }
 }
@@ -0,0 +1,150 @@
+package com.nolanlawson.relatedness.autosuggest;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.MapEvictionListener;
+import com.google.common.collect.MapMaker;
+
+/**
+ * Optional, thread-safe cache in front of RelationSuggester.suggest(), since nearly all of the 
+ * autosuggest traffic is for the same few prefixes, like "", "g", "gr", and "c".
+ * 
+ * Results are keyed by the lowercased input and the limit, which is safe because suggest() is 
+ * case-insensitive, so e.g. "Dad's Cou" and "dad's cou" share the same result.  When several threads ask for the same missing key at once, 
+ * only one of them computes it, and the others wait for its result.
+ * 
+ * @author nolan
+ *
+ */
+public class SuggestionCache {
+
+    private final RelationSuggester suggester;
+    private final ConcurrentMap<Key, List<String>> cache;
+    
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    
+    /**
+     * Cache that holds at most maximumSize results, evicting the least recently used ones first.
+     * @param suggester
+     * @param maximumSize
+     */
+    public SuggestionCache(RelationSuggester suggester, int maximumSize) {
+	this(suggester, new MapMaker().maximumSize(maximumSize));
+    }
+    
+    /**
+     * Cache that holds at most maximumSize results, and also evicts any result that hasn't been 
+     * used for the given amount of time.
+     * @param suggester
+     * @param maximumSize
+     * @param expireAfterAccess
+     * @param timeUnit
+     */
+    public SuggestionCache(RelationSuggester suggester, int maximumSize, long expireAfterAccess, 
+	    TimeUnit timeUnit) {
+	this(suggester, new MapMaker().maximumSize(maximumSize).expireAfterAccess(expireAfterAccess, timeUnit));
+    }
+    
+    private SuggestionCache(RelationSuggester suggester, MapMaker mapMaker) {
+	this.suggester = suggester;
+	// a computing map blocks any other threads asking for a key while it's being computed
+	cache = mapMaker.evictionListener(new MapEvictionListener<Key, List<String>>() {
+
+	    public void onEviction(Key key, List<String> value) {
+		evictionCount.incrementAndGet();
+	    }
+	}).makeComputingMap(new Function<Key, List<String>>() {
+
+	    public List<String> apply(Key key) {
+		missCount.incrementAndGet();
+		return ImmutableList.copyOf(SuggestionCache.this.suggester.suggest(key.input, key.limit));
+	    }
+	});
+    }
+    
+    /**
+     * Same as RelationSuggester.suggest(input, limit), except the result may come from the cache.  
+     * The returned list is unmodifiable.
+     * 
+     * @param input
+     * @param limit
+     * @return
+     */
+    public List<String> suggest(String input, int limit) {
+	requestCount.incrementAndGet();
+	return cache.get(new Key(input.toLowerCase(), limit));
+    }
+    
+    /**
+     * Number of requests that didn't have to compute anything, including ones that waited for 
+     * another thread to compute the same result.
+     * @return
+     */
+    public long getHitCount() {
+	return requestCount.get() - missCount.get();
+    }
+    
+    public long getMissCount() {
+	return missCount.get();
+    }
+    
+    public long getEvictionCount() {
+	return evictionCount.get();
+    }
+    
+    public long getRequestCount() {
+	return requestCount.get();
+    }
+    
+    public double getHitRate() {
+	long requests = requestCount.get();
+	return requests == 0 ? 1.0 : (double) getHitCount() / requests;
+    }
+    
+    public int size() {
+	return cache.size();
+    }
+    
+    public void clear() {
+	cache.clear();
+    }
+
+    @Override
+    public String toString() {
+	return "SuggestionCache [size=" + size() + ", hitCount=" + getHitCount()
+		+ ", missCount=" + missCount + ", evictionCount="
+		+ evictionCount + "]";
+    }
+    
+    private static class Key {
+	
+	private final String input;
+	private final int limit;
+	
+	Key(String input, int limit) {
+	    this.input = input;
+	    this.limit = limit;
+	}
+
+	@Override
+	public int hashCode() {
+	    return 31 * input.hashCode() + limit;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+	    if (!(obj instanceof Key)) {
+		return false;
+	    }
+	    Key other = (Key) obj;
+	    return limit == other.limit && input.equals(other.input);
+	}
+    }
+}
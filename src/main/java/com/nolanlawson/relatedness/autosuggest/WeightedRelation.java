@@ -2,6 +2,7 @@ package com.nolanlawson.relatedness.autosuggest;
 
 import com.google.common.base.Function;
 import com.google.common.collect.ComparisonChain;
+import com.nolanlawson.relatedness.util.CompiledTrie;
 import com.nolanlawson.relatedness.util.Trie.TrieLeaf;
 
 
@@ -62,4 +63,11 @@ public class WeightedRelation implements Comparable<WeightedRelation> {
 		    return new WeightedRelation(input.getKey().toString(), input.getValue());
 		}
     };
+    
+    /**
+     * Same as fromTrieLeafFunction, but for an entry in a CompiledTrie, so no leaf is needed.
+     */
+    public static WeightedRelation fromTrieEntry(CompiledTrie trie, int entry) {
+	return new WeightedRelation(trie.getKey(entry), trie.getWeight(entry));
+    }
 }
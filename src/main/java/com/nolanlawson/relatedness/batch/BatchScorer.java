@@ -0,0 +1,318 @@
+package com.nolanlawson.relatedness.batch;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.nolanlawson.relatedness.Relatedness;
+import com.nolanlawson.relatedness.RelatednessCalculator;
+import com.nolanlawson.relatedness.parser.RelationParseCache;
+import com.nolanlawson.relatedness.parser.RelationParseResult;
+
+/**
+ * Scores a whole file of relative names, one per line (or one per CSV row), e.g. for survey exports.
+ * CSV rows may span several lines, if a quoted field has newlines in it.
+ * 
+ * The input is read through memory-mapped windows, so it never has to fit in memory, and is split 
+ * into batches of lines that go through three stages connected by bounded queues:
+ * 
+ * 1. a reader thread, which splits the input into lines
+ * 2. worker threads, which parse and calculate (sharing a RelationParseCache)
+ * 3. the calling thread, which writes the results out in the original order
+ * 
+ * The queues being bounded means a slow stage makes the others wait, rather than piling up batches
+ * in memory.  The reader also can't get more than a queue's worth of batches ahead of the writer, so 
+ * the batches that finish early and wait for their turn are bounded too.  If a batch can't be scored, 
+ * the whole thing stops and score() throws.
+ * 
+ * Each output line is "name,coefficient,degree,parseError", where either the first two or the last 
+ * one are empty.
+ * 
+ * @author nolan
+ *
+ */
+public class BatchScorer {
+
+	private static final String CHARSET = "UTF-8";
+	private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+	private static final int LINES_PER_BATCH = 1024;
+	private static final int BATCHES_PER_THREAD = 4;
+	private static final int CACHE_SIZE = 10000;
+	
+	// marks the end of a queue
+	private static final Batch END = new Batch(-1, null);
+	// tells the writer to give up, because a batch couldn't be scored
+	private static final Batch FAILED = new Batch(-2, null);
+	
+	private final int numThreads;
+	private final int csvColumn;
+	private final RelationParseCache cache = new RelationParseCache(CACHE_SIZE);
+	
+	/**
+	 * @param numThreads number of worker threads
+	 * @param csvColumn column of each CSV row to score, or -1 if each line is just a name
+	 */
+	public BatchScorer(int numThreads, int csvColumn) {
+		Preconditions.checkArgument(numThreads > 0, "numThreads must be positive: %s", numThreads);
+		this.numThreads = numThreads;
+		this.csvColumn = csvColumn;
+	}
+	
+	/**
+	 * Usage: BatchScorer input output [numThreads] [csvColumn]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: BatchScorer input output [numThreads] [csvColumn]");
+			System.exit(1);
+		}
+		int numThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		int csvColumn = args.length > 3 ? Integer.parseInt(args[3]) : -1;
+		
+		long startTime = System.nanoTime();
+		Writer output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[1]), CHARSET));
+		long numLines;
+		try {
+			numLines = new BatchScorer(numThreads, csvColumn).score(new File(args[0]), output);
+		} finally {
+			output.close();
+		}
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		System.err.println(String.format("Scored %d lines in %.1f s (%.0f lines/sec)", 
+				numLines, seconds, numLines / seconds));
+	}
+	
+	/**
+	 * Score every line in the input, writing the results to the output in the same order.
+	 * @param input
+	 * @param output
+	 * @return the number of lines scored
+	 * @throws IOException
+	 */
+	public long score(final File input, Writer output) throws IOException {
+		
+		int capacity = numThreads * BATCHES_PER_THREAD;
+		final BlockingQueue<Batch> inputQueue = new ArrayBlockingQueue<Batch>(capacity);
+		final BlockingQueue<Batch> outputQueue = new ArrayBlockingQueue<Batch>(capacity);
+		// one permit per batch that's been read but not yet written
+		final Semaphore inFlight = new Semaphore(capacity);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		
+		// submit() rather than execute(), so that threads interrupted by stopping early just end quietly
+		// instead of printing stack traces.  Real failures are reported through failure
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads + 1);
+		try {
+			executor.submit(new Runnable() {
+				
+				public void run() {
+					try {
+						readBatches(input, inputQueue, inFlight);
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					} finally {
+						for (int i = 0; i < numThreads; i++) {
+							put(inputQueue, END);
+						}
+					}
+				}
+			});
+			for (int i = 0; i < numThreads; i++) {
+				executor.submit(new Runnable() {
+					
+					public void run() {
+						Batch batch;
+						while ((batch = take(inputQueue)) != END) {
+							Batch scored;
+							try {
+								scored = scoreBatch(batch);
+							} catch (Throwable t) {
+								// the writer would wait for this batch forever, so stop everything
+								failure.compareAndSet(null, t);
+								put(outputQueue, FAILED);
+								return;
+							}
+							put(outputQueue, scored);
+						}
+						put(outputQueue, END);
+					}
+				});
+			}
+			long numLines = writeBatches(outputQueue, inFlight, output);
+			if (failure.get() != null) {
+				throw new IOException("failed to score " + input, failure.get());
+			}
+			return numLines;
+		} finally {
+			// wakes up anything still blocked, if we stopped early
+			executor.shutdownNow();
+		}
+	}
+
+	private void readBatches(File input, BlockingQueue<Batch> inputQueue, Semaphore inFlight) throws IOException {
+		FileInputStream inputStream = new FileInputStream(input);
+		try {
+			FileChannel channel = inputStream.getChannel();
+			long size = channel.size();
+			
+			long sequence = 0;
+			List<String> lines = Lists.newArrayListWithCapacity(LINES_PER_BATCH);
+			// holds the current line, including any part of it left over from the previous window
+			byte[] line = new byte[256];
+			int lineLength = 0;
+			// inside a quoted CSV field, where newlines don't end the row
+			boolean quoted = false;
+			
+			for (long position = 0; position < size; position += WINDOW_SIZE) {
+				MappedByteBuffer window = channel.map(MapMode.READ_ONLY, position, 
+						Math.min(WINDOW_SIZE, size - position));
+				while (window.hasRemaining()) {
+					byte b = window.get();
+					if (b == '"' && csvColumn >= 0) {
+						// doubled quotes toggle twice, so they work out
+						quoted = !quoted;
+					}
+					if (b != '\n' || quoted) {
+						if (lineLength == line.length) {
+							byte[] newLine = new byte[line.length * 2];
+							System.arraycopy(line, 0, newLine, 0, lineLength);
+							line = newLine;
+						}
+						line[lineLength++] = b;
+						continue;
+					}
+					lines.add(decode(line, lineLength));
+					lineLength = 0;
+					if (lines.size() == LINES_PER_BATCH) {
+						acquire(inFlight);
+						put(inputQueue, new Batch(sequence++, lines));
+						lines = Lists.newArrayListWithCapacity(LINES_PER_BATCH);
+					}
+				}
+			}
+			if (lineLength > 0) { // no newline at the end
+				lines.add(decode(line, lineLength));
+			}
+			if (!lines.isEmpty()) {
+				acquire(inFlight);
+				put(inputQueue, new Batch(sequence, lines));
+			}
+		} finally {
+			inputStream.close();
+		}
+	}
+	
+	private Batch scoreBatch(Batch batch) {
+		List<String> results = Lists.newArrayListWithCapacity(batch.lines.size());
+		StringBuilder stringBuilder = new StringBuilder();
+		for (String line : batch.lines) {
+			String name = csvColumn < 0 ? line : CsvUtil.getField(line, csvColumn);
+			stringBuilder.setLength(0);
+			CsvUtil.appendField(stringBuilder, name).append(',');
+			
+			RelationParseResult result = cache.tryParse(name);
+			if (result.getParseError() != null) {
+				stringBuilder.append(",,").append(result.getParseError());
+			} else {
+				Relatedness relatedness = RelatednessCalculator.calculate(result.getRelation());
+				stringBuilder.append(relatedness.getCoefficient()).append(',')
+						.append(relatedness.getAverageDegree()).append(',');
+			}
+			results.add(stringBuilder.toString());
+		}
+		return new Batch(batch.sequence, results);
+	}
+	
+	private long writeBatches(BlockingQueue<Batch> outputQueue, Semaphore inFlight, Writer output) throws IOException {
+		// batches can finish out of order, so hold onto them until it's their turn.  There can't be 
+		// more of them than there are permits, since the one we're waiting for holds a permit too
+		Map<Long, Batch> pending = Maps.newHashMap();
+		long nextSequence = 0;
+		long numLines = 0;
+		int numFinished = 0;
+		while (numFinished < numThreads) {
+			Batch batch = take(outputQueue);
+			if (batch == END) {
+				numFinished++;
+				continue;
+			} else if (batch == FAILED) {
+				break;
+			}
+			pending.put(batch.sequence, batch);
+			while ((batch = pending.remove(nextSequence)) != null) {
+				for (String line : batch.lines) {
+					output.write(line);
+					output.write('\n');
+				}
+				numLines += batch.lines.size();
+				nextSequence++;
+				inFlight.release();
+			}
+		}
+		output.flush();
+		return numLines;
+	}
+	
+	private static String decode(byte[] line, int length) throws UnsupportedEncodingException {
+		if (length > 0 && line[length - 1] == '\r') {
+			length--;
+		}
+		return new String(line, 0, length, CHARSET);
+	}
+	
+	private static <T> void put(BlockingQueue<T> queue, T element) {
+		try {
+			queue.put(element);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted", e);
+		}
+	}
+	
+	private static void acquire(Semaphore semaphore) {
+		try {
+			semaphore.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted", e);
+		}
+	}
+	
+	private static <T> T take(BlockingQueue<T> queue) {
+		try {
+			return queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted", e);
+		}
+	}
+	
+	private static class Batch {
+		
+		private final long sequence;
+		private final List<String> lines;
+		
+		private Batch(long sequence, List<String> lines) {
+			this.sequence = sequence;
+			this.lines = lines;
+		}
+	}
+}
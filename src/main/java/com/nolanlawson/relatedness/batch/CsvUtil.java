@@ -0,0 +1,75 @@
+package com.nolanlawson.relatedness.batch;
+
+/**
+ * Just enough CSV (RFC 4180) to read one field out of a row and to write fields back out.
+ * 
+ * @author nolan
+ *
+ */
+public class CsvUtil {
+
+	private static final char SEPARATOR = ',';
+	private static final char QUOTE = '"';
+	
+	private CsvUtil() {
+	}
+	
+	/**
+	 * Get the given field (starting at 0) from a single CSV row, or an empty string if the row 
+	 * doesn't have that many fields.  Quotes are removed and doubled quotes are unescaped.
+	 * @param row
+	 * @param column
+	 * @return
+	 */
+	public static String getField(String row, int column) {
+		StringBuilder field = new StringBuilder();
+		int currentColumn = 0;
+		boolean quoted = false;
+		for (int i = 0; i < row.length(); i++) {
+			char ch = row.charAt(i);
+			if (quoted) {
+				if (ch != QUOTE) {
+					field.append(ch);
+				} else if (i + 1 < row.length() && row.charAt(i + 1) == QUOTE) {
+					field.append(QUOTE);
+					i++;
+				} else {
+					quoted = false;
+				}
+			} else if (ch == QUOTE) {
+				quoted = true;
+			} else if (ch == SEPARATOR) {
+				if (currentColumn == column) {
+					break;
+				}
+				currentColumn++;
+				field.setLength(0);
+			} else {
+				field.append(ch);
+			}
+		}
+		return currentColumn == column ? field.toString() : "";
+	}
+	
+	/**
+	 * Append the value as a CSV field, quoting it if necessary.
+	 * @param stringBuilder
+	 * @param value
+	 * @return the same StringBuilder
+	 */
+	public static StringBuilder appendField(StringBuilder stringBuilder, String value) {
+		if (value.indexOf(SEPARATOR) == -1 && value.indexOf(QUOTE) == -1 
+				&& value.indexOf('\n') == -1 && value.indexOf('\r') == -1) {
+			return stringBuilder.append(value);
+		}
+		stringBuilder.append(QUOTE);
+		for (int i = 0; i < value.length(); i++) {
+			char ch = value.charAt(i);
+			if (ch == QUOTE) {
+				stringBuilder.append(QUOTE);
+			}
+			stringBuilder.append(ch);
+		}
+		return stringBuilder.append(QUOTE);
+	}
+}
@@ -0,0 +1,358 @@
+package com.nolanlawson.relatedness.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Layered (Sugiyama-style) layout of a family tree, where every edge goes from an ancestor down to
+ * a descendant, so ancestors end up above their descendants, one generation per layer.
+ * 
+ * The steps are the usual ones, kept simple because these graphs only have a few dozen nodes:
+ * 
+ * 1) layers: each node goes one layer below its lowest parent, and nodes without parents are pulled 
+ *    down to just above their highest child
+ * 2) ordering: a few sweeps of the barycenter heuristic, keeping the order with the fewest crossings
+ * 3) coordinates: each node moves towards the average x of its neighbors, without overlapping the 
+ *    others in its layer
+ * 
+ * Edges between layers that aren't adjacent are just drawn straight, without dummy nodes; the graphs
+ * drawn by RelationGraph don't have any.
+ * 
+ * Sizes are in points, and node sizes are estimated from the length of their labels, since there's
+ * no font to measure.  Instances aren't shared, so layouts can be computed on any number of threads.
+ * 
+ * @author nolan
+ *
+ */
+class LayeredLayout {
+
+	// same as dot's defaults
+	static final double NODE_SEPARATION = 18;
+	static final double RANK_SEPARATION = 36;
+	static final double MIN_NODE_WIDTH = 54;
+	static final double MIN_NODE_HEIGHT = 36;
+	static final double MARGIN = 4;
+	
+	static final double FONT_SIZE = 14;
+	static final double LINE_HEIGHT = 16;
+	// average width of a Helvetica character, relative to the font size
+	private static final double CHAR_WIDTH = 0.55 * FONT_SIZE;
+	
+	private static final int NUM_ORDERING_SWEEPS = 8;
+	private static final int NUM_POSITIONING_SWEEPS = 8;
+	
+	private int numNodes;
+	private int[][] parents;
+	private int[][] children;
+	
+	private int[] layers;
+	private List<List<Integer>> order = new ArrayList<List<Integer>>();
+	private double[] x;
+	private double[] y;
+	private double[] widths;
+	private double[] heights;
+	private double width;
+	private double height;
+
+	/**
+	 * @param labelLines the lines of each node's label
+	 * @param edges pairs of {ancestor, descendant}
+	 */
+	LayeredLayout(String[][] labelLines, int[][] edges) {
+		numNodes = labelLines.length;
+		parents = adjacency(edges, 1, 0);
+		children = adjacency(edges, 0, 1);
+		
+		widths = new double[numNodes];
+		heights = new double[numNodes];
+		for (int i = 0; i < numNodes; i++) {
+			int maxLineLength = 0;
+			for (String line : labelLines[i]) {
+				maxLineLength = Math.max(maxLineLength, line.length());
+			}
+			// the label has to fit inside an ellipse, which needs about sqrt(2) times the space
+			widths[i] = Math.max(MIN_NODE_WIDTH, Math.sqrt(2) * maxLineLength * CHAR_WIDTH + 8);
+			heights[i] = Math.max(MIN_NODE_HEIGHT, Math.sqrt(2) * labelLines[i].length * LINE_HEIGHT);
+		}
+		
+		assignLayers();
+		orderLayers();
+		assignCoordinates();
+	}
+	
+	double getX(int node) {
+		return x[node];
+	}
+	
+	double getY(int node) {
+		return y[node];
+	}
+	
+	double getWidth(int node) {
+		return widths[node];
+	}
+	
+	double getHeight(int node) {
+		return heights[node];
+	}
+	
+	int getLayer(int node) {
+		return layers[node];
+	}
+	
+	/**
+	 * Nodes in each layer, from left to right.
+	 */
+	List<List<Integer>> getOrder() {
+		return order;
+	}
+	
+	double getWidth() {
+		return width;
+	}
+	
+	double getHeight() {
+		return height;
+	}
+	
+	private int[][] adjacency(int[][] edges, int from, int to) {
+		int[] counts = new int[numNodes];
+		for (int[] edge : edges) {
+			counts[edge[from]]++;
+		}
+		int[][] result = new int[numNodes][];
+		for (int i = 0; i < numNodes; i++) {
+			result[i] = new int[counts[i]];
+		}
+		Arrays.fill(counts, 0);
+		for (int[] edge : edges) {
+			result[edge[from]][counts[edge[from]]++] = edge[to];
+		}
+		return result;
+	}
+	
+	private void assignLayers() {
+		// longest path from the top, in topological order
+		int[] topologicalOrder = new int[numNodes];
+		int[] numUnvisitedParents = new int[numNodes];
+		int head = 0;
+		int tail = 0;
+		for (int i = 0; i < numNodes; i++) {
+			numUnvisitedParents[i] = parents[i].length;
+			if (numUnvisitedParents[i] == 0) {
+				topologicalOrder[tail++] = i;
+			}
+		}
+		layers = new int[numNodes];
+		while (head < tail) {
+			int node = topologicalOrder[head++];
+			for (int child : children[node]) {
+				layers[child] = Math.max(layers[child], layers[node] + 1);
+				if (--numUnvisitedParents[child] == 0) {
+					topologicalOrder[tail++] = child;
+				}
+			}
+		}
+		if (tail < numNodes) {
+			throw new IllegalArgumentException("graph has a cycle");
+		}
+		
+		// pull the nodes without parents down next to their children, working up from the bottom
+		for (int i = numNodes - 1; i >= 0; i--) {
+			int node = topologicalOrder[i];
+			if (parents[node].length == 0 && children[node].length > 0) {
+				int minChildLayer = Integer.MAX_VALUE;
+				for (int child : children[node]) {
+					minChildLayer = Math.min(minChildLayer, layers[child]);
+				}
+				layers[node] = minChildLayer - 1;
+			}
+		}
+		int minLayer = 0;
+		int maxLayer = 0;
+		for (int i = 0; i < numNodes; i++) {
+			minLayer = Math.min(minLayer, layers[i]);
+			maxLayer = Math.max(maxLayer, layers[i]);
+		}
+		for (int i = 0; i <= maxLayer - minLayer; i++) {
+			order.add(new ArrayList<Integer>());
+		}
+		// start with the nodes in the order they were added, which is usually pretty good already
+		for (int i = 0; i < numNodes; i++) {
+			layers[i] -= minLayer;
+			order.get(layers[i]).add(i);
+		}
+	}
+	
+	private void orderLayers() {
+		List<List<Integer>> bestOrder = copy(order);
+		int fewestCrossings = countCrossings();
+		for (int sweep = 0; sweep < NUM_ORDERING_SWEEPS && fewestCrossings > 0; sweep++) {
+			if (sweep % 2 == 0) {
+				for (int layer = 1; layer < order.size(); layer++) {
+					sortByBarycenter(order.get(layer), parents, order.get(layer - 1));
+				}
+			} else {
+				for (int layer = order.size() - 2; layer >= 0; layer--) {
+					sortByBarycenter(order.get(layer), children, order.get(layer + 1));
+				}
+			}
+			int crossings = countCrossings();
+			if (crossings < fewestCrossings) {
+				fewestCrossings = crossings;
+				bestOrder = copy(order);
+			}
+		}
+		order = bestOrder;
+	}
+	
+	private void sortByBarycenter(List<Integer> layer, int[][] neighbors, List<Integer> neighborLayer) {
+		final double[] barycenters = new double[numNodes];
+		for (int i = 0; i < layer.size(); i++) {
+			int node = layer.get(i);
+			double sum = 0;
+			int count = 0;
+			for (int neighbor : neighbors[node]) {
+				int position = neighborLayer.indexOf(neighbor);
+				if (position != -1) {
+					sum += position;
+					count++;
+				}
+			}
+			// nodes without neighbors keep their place, more or less
+			barycenters[node] = count == 0 ? i * (double) neighborLayer.size() / layer.size() : sum / count;
+		}
+		// stable, so ties keep their current order
+		Collections.sort(layer, new Comparator<Integer>() {
+
+			public int compare(Integer node1, Integer node2) {
+				return Double.compare(barycenters[node1], barycenters[node2]);
+			}
+		});
+	}
+	
+	private int countCrossings() {
+		int[] positions = positions();
+		int crossings = 0;
+		for (int layer = 0; layer + 1 < order.size(); layer++) {
+			List<int[]> edges = new ArrayList<int[]>();
+			for (int node : order.get(layer)) {
+				for (int child : children[node]) {
+					if (layers[child] == layer + 1) {
+						edges.add(new int[]{positions[node], positions[child]});
+					}
+				}
+			}
+			for (int i = 0; i < edges.size(); i++) {
+				for (int j = i + 1; j < edges.size(); j++) {
+					int[] edge1 = edges.get(i);
+					int[] edge2 = edges.get(j);
+					if ((long) (edge1[0] - edge2[0]) * (edge1[1] - edge2[1]) < 0) {
+						crossings++;
+					}
+				}
+			}
+		}
+		return crossings;
+	}
+	
+	private int[] positions() {
+		int[] positions = new int[numNodes];
+		for (List<Integer> layer : order) {
+			for (int i = 0; i < layer.size(); i++) {
+				positions[layer.get(i)] = i;
+			}
+		}
+		return positions;
+	}
+	
+	private void assignCoordinates() {
+		x = new double[numNodes];
+		y = new double[numNodes];
+		
+		// start packed to the left
+		for (List<Integer> layer : order) {
+			double left = 0;
+			for (int node : layer) {
+				x[node] = left + widths[node] / 2;
+				left += widths[node] + NODE_SEPARATION;
+			}
+		}
+		
+		// then move everything towards its neighbors, alternating between parents and children
+		for (int sweep = 0; sweep < NUM_POSITIONING_SWEEPS; sweep++) {
+			boolean down = sweep % 2 == 0;
+			for (int i = 0; i < order.size(); i++) {
+				int layer = down ? i : order.size() - 1 - i;
+				placeNearNeighbors(order.get(layer), down ? parents : children);
+			}
+		}
+		
+		double minX = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE;
+		for (int i = 0; i < numNodes; i++) {
+			minX = Math.min(minX, x[i] - widths[i] / 2);
+			maxX = Math.max(maxX, x[i] + widths[i] / 2);
+		}
+		for (int i = 0; i < numNodes; i++) {
+			x[i] += MARGIN - minX;
+		}
+		width = numNodes == 0 ? 2 * MARGIN : maxX - minX + 2 * MARGIN;
+		
+		double top = MARGIN;
+		for (List<Integer> layer : order) {
+			double layerHeight = 0;
+			for (int node : layer) {
+				layerHeight = Math.max(layerHeight, heights[node]);
+			}
+			for (int node : layer) {
+				y[node] = top + layerHeight / 2;
+			}
+			top += layerHeight + RANK_SEPARATION;
+		}
+		height = order.isEmpty() ? 2 * MARGIN : top - RANK_SEPARATION + MARGIN;
+	}
+	
+	private void placeNearNeighbors(List<Integer> layer, int[][] neighbors) {
+		if (layer.isEmpty()) {
+			return;
+		}
+		double[] desired = new double[layer.size()];
+		for (int i = 0; i < layer.size(); i++) {
+			int node = layer.get(i);
+			desired[i] = x[node];
+			if (neighbors[node].length > 0) {
+				double sum = 0;
+				for (int neighbor : neighbors[node]) {
+					sum += x[neighbor];
+				}
+				desired[i] = sum / neighbors[node].length;
+			}
+		}
+		// go as close as possible from left to right without overlapping, then shift the whole 
+		// layer so that on average, the nodes are where they want to be
+		double offset = 0;
+		double right = -Double.MAX_VALUE;
+		for (int i = 0; i < layer.size(); i++) {
+			int node = layer.get(i);
+			x[node] = Math.max(desired[i], right + NODE_SEPARATION + widths[node] / 2);
+			right = x[node] + widths[node] / 2;
+			offset += desired[i] - x[node];
+		}
+		offset /= layer.size();
+		for (int node : layer) {
+			x[node] += offset;
+		}
+	}
+	
+	private static List<List<Integer>> copy(List<List<Integer>> order) {
+		List<List<Integer>> result = new ArrayList<List<Integer>>();
+		for (List<Integer> layer : order) {
+			result.add(new ArrayList<Integer>(layer));
+		}
+		return result;
+	}
+}
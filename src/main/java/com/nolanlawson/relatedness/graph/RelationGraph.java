@@ -1,10 +1,7 @@
 package com.nolanlawson.relatedness.graph;
 
-import java.util.HashSet;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
+import java.io.IOException;
+import java.util.Arrays;
 
 import com.nolanlawson.relatedness.CommonAncestor;
 import com.nolanlawson.relatedness.Relation;
@@ -13,10 +10,9 @@ import com.nolanlawson.relatedness.util.WordWrapper;
 
 public class RelationGraph {
 
-	private static final String TEMPLATE = "digraph a {\n" +
-			"size=\"10,10\";\n" +
-			"%s" +
-			"}\n";
+	private static final String HEADER = "digraph a {\n" +
+			"size=\"10,10\";\n";
+	private static final String FOOTER = "}\n";
 	
 	// we want to keep the graph nice and skinny, so choose a decent word-wrapping width
 	private static final int TARGET_LABEL_LENGTH_FOUR_ANCESTORS = 8;
@@ -26,11 +22,22 @@ public class RelationGraph {
 	// so we can say 'your parent', 'your other parent,' 'your third grandparent', etc.
 	private static final String[] COUNTER_WORDS = {"","other ","third ","fourth "};
 	
-	// sort by name so that e.g. "grandparent" appears before "other grandparent" appears before "third grandparent"...
-	private Map<LabelKey,String> labels = new LinkedHashMap<LabelKey,String>();
-	private Set<String> nodeConnections = new HashSet<String>();
+	private static final int INITIAL_CAPACITY = 16;
+	
+	// nodes are numbered in the order they're added, so that e.g. "grandparent" appears before 
+	// "other grandparent" appears before "third grandparent"...  Node i is named labels[i], 
+	// ancestorDistances[i] generations up (or down, if negative), and is that relative's 
+	// ancestorIds[i]th ancestor at that distance.
+	private String[] labels = new String[INITIAL_CAPACITY];
+	private int[] ancestorDistances = new int[INITIAL_CAPACITY];
+	private int[] ancestorIds = new int[INITIAL_CAPACITY];
+	private int numNodes;
+	
+	// edge i goes from node edgeAncestors[i] to node edgeDescendants[i], in the order they were added
+	private int[] edgeAncestors = new int[INITIAL_CAPACITY];
+	private int[] edgeDescendants = new int[INITIAL_CAPACITY];
+	private int numEdges;
 
-	private NodeNameIterator nameIterator = new NodeNameIterator();
 	private int maxRelationsInSingleGeneration = 1;
 	
 	public RelationGraph() {
@@ -71,14 +78,14 @@ public class RelationGraph {
 			int unique = i / 2;
 			
 			// name the common ancestor relative to A, unless B is the common ancestor
-			String commonAncestorId = (distFrom2 == 0) 
+			int commonAncestorId = (distFrom2 == 0) 
 					? getId(targetName, 0, i)
 					: getId(sourceName, distFrom1, i);
 			
 			// add links between relatives on A's side, including A and the common ancestor
 			for (int j = 0; j < distFrom1; j++) {
-				String leftId = getId(sourceName, j, j == 0 ? 0 : unique);
-				String rightId;
+				int leftId = getId(sourceName, j, j == 0 ? 0 : unique);
+				int rightId;
 				
 				if (j + 1 == distFrom1) { // common ancestor; use the predetermined common ancestor name
 					rightId = commonAncestorId;
@@ -91,7 +98,7 @@ public class RelationGraph {
 			// add relatives on B's side, starting from common ancestor, naming everyone relative to B
 			// except the common ancestor, and except if A is the common ancestor
 			for (int j = distFrom2; j > 0; j--) {
-				String leftId;
+				int leftId;
 				if (j == distFrom2) { // left is the common ancestor
 					leftId = commonAncestorId;
 				} else if (distFrom1 == 0){ // name after A if A is the common ancestor
@@ -99,7 +106,7 @@ public class RelationGraph {
 				} else { // name after B
 					leftId = getId(targetName, j, unique);
 				}
-				String rightId;
+				int rightId;
 				if (j != 1 && distFrom1 == 0) { // the ancestor is A, and B is not the one on the right
 					rightId = getId(sourceName, -(distFrom2 - (j - 1)), unique);
 				} else if (j != 1) { // B is not the one on the right
@@ -119,42 +126,179 @@ public class RelationGraph {
 	 */
 	public String drawGraph() {
 		StringBuilder stringBuilder = new StringBuilder();
-		for (Entry<LabelKey,String> entry : labels.entrySet()) {
-			LabelKey labelKey = entry.getKey();
-			String id = entry.getValue();
-			
-            // emphasize certain nodes for understandability, e.g. "you" and "your cousin",
-			// but not everything in between
-			boolean emphasize = labelKey.getAncestorDistance() == 0;
-			
+		try {
+			drawGraph(stringBuilder);
+		} catch (IOException e) {
+			throw new AssertionError(e); // StringBuilders don't throw IOExceptions
+		}
+		return stringBuilder.toString();
+	}
+	
+	/**
+	 * Write the DOT-format graph straight to the given Appendable (e.g. a Writer), one node or edge 
+	 * at a time, without building the whole thing as a String first.  The Appendable is neither 
+	 * flushed nor closed.
+	 * 
+	 * The output only depends on the relations that were added, so it's the same every time.
+	 * @param out
+	 * @throws IOException
+	 */
+	public void drawGraph(Appendable out) throws IOException {
+		// DOT is picky about node names, so use a, b, c...
+		String[] names = new String[numNodes];
+		NodeNameIterator nameIterator = new NodeNameIterator();
+		for (int i = 0; i < numNodes; i++) {
+			names[i] = nameIterator.next();
+		}
+		
+		out.append(HEADER);
+		for (int i = 0; i < numNodes; i++) {
 			// DOT format for declaring a node
-			stringBuilder.append(id)
-                                .append(" [label=\"")
-                                .append(createHumanReadableLabel(labelKey))
-                                .append("\"")
-                                .append(", fontname=\"Helvetica\"")
-                                .append(emphasize
-                                	? ", color=\"#788c45\", penwidth=\"3.0\", " +
-                                			"style=\"filled\", fillcolor=\"#f6f6f6\""
-                                	: "")
-                                .append("];\n");
+			out.append(names[i]).append(" [label=\"");
+			appendEscaped(out, createHumanReadableLabel(i));
+			out.append("\"")
+					.append(", fontname=\"Helvetica\"")
+					.append(isEmphasized(i)
+						? ", color=\"#788c45\", penwidth=\"3.0\", " +
+								"style=\"filled\", fillcolor=\"#f6f6f6\""
+						: "")
+					.append("];\n");
+		}
+		for (int i = 0; i < numEdges; i++) {
+			// DOT notation for a directed graph
+			out.append(names[edgeAncestors[i]]).append(" -> ").append(names[edgeDescendants[i]]).append(";\n");
+		}
+		out.append(FOOTER);
+	}
+	
+	/**
+	 * Output the graph as an SVG string, laid out in-process rather than by Graphviz
+	 * @return
+	 */
+	public String drawSvg() {
+		StringBuilder stringBuilder = new StringBuilder();
+		try {
+			drawSvg(stringBuilder);
+		} catch (IOException e) {
+			throw new AssertionError(e); // StringBuilders don't throw IOExceptions
 		}
-		for (CharSequence nodeConnection : nodeConnections) {
-			stringBuilder.append(nodeConnection).append(";\n");
+		return stringBuilder.toString();
+	}
+	
+	/**
+	 * Write the graph as SVG to the given Appendable, with ancestors above their descendants and
+	 * the same nodes emphasized as in drawGraph().  The Appendable is neither flushed nor closed.
+	 * @param out
+	 * @throws IOException
+	 */
+	public void drawSvg(Appendable out) throws IOException {
+		String[][] labelLines = new String[numNodes][];
+		boolean[] emphasized = new boolean[numNodes];
+		for (int i = 0; i < numNodes; i++) {
+			labelLines[i] = createHumanReadableLabel(i).split("\n");
+			emphasized[i] = isEmphasized(i);
+		}
+		int[][] edges = new int[numEdges][];
+		for (int i = 0; i < numEdges; i++) {
+			edges[i] = new int[]{edgeAncestors[i], edgeDescendants[i]};
+		}
+		SvgRenderer.render(labelLines, emphasized, edges, out);
+	}
+	
+	/**
+	 * Output the graph as a JSON string
+	 * @return
+	 */
+	public String drawJson() {
+		StringBuilder stringBuilder = new StringBuilder();
+		try {
+			drawJson(stringBuilder);
+		} catch (IOException e) {
+			throw new AssertionError(e); // StringBuilders don't throw IOExceptions
+		}
+		return stringBuilder.toString();
+	}
+	
+	/**
+	 * Write the graph as JSON to the given Appendable, for clients that want to draw it themselves:
+	 * 
+	 * {"nodes":[{"label":"You","emphasized":true},...],"edges":[[1,0],...]}
+	 * 
+	 * Each edge is a pair of indexes into the nodes, from the ancestor to the descendant.  Labels
+	 * are word-wrapped with newlines, same as in drawGraph().
+	 * @param out
+	 * @throws IOException
+	 */
+	public void drawJson(Appendable out) throws IOException {
+		out.append("{\"nodes\":[");
+		for (int i = 0; i < numNodes; i++) {
+			out.append(i == 0 ? "{\"label\":\"" : ",{\"label\":\"");
+			appendJsonEscaped(out, createHumanReadableLabel(i));
+			out.append("\",\"emphasized\":").append(String.valueOf(isEmphasized(i))).append('}');
+		}
+		out.append("],\"edges\":[");
+		for (int i = 0; i < numEdges; i++) {
+			out.append(i == 0 ? "[" : ",[")
+					.append(Integer.toString(edgeAncestors[i]))
+					.append(',')
+					.append(Integer.toString(edgeDescendants[i]))
+					.append(']');
+		}
+		out.append("]}");
+	}
+	
+	public int getNumNodes() {
+		return numNodes;
+	}
+	
+	public int getNumEdges() {
+		return numEdges;
+	}
+	
+	private boolean isEmphasized(int node) {
+		// emphasize certain nodes for understandability, e.g. "you" and "your cousin",
+		// but not everything in between
+		return ancestorDistances[node] == 0;
+	}
+	
+	private static void appendJsonEscaped(Appendable out, String label) throws IOException {
+		for (int i = 0; i < label.length(); i++) {
+			char c = label.charAt(i);
+			if (c == '\n') {
+				out.append("\\n");
+			} else if (c == '"' || c == '\\') {
+				out.append('\\').append(c);
+			} else if (c < ' ') {
+				String hex = Integer.toHexString(c);
+				out.append("\\u").append("0000", hex.length(), 4).append(hex);
+			} else {
+				out.append(c);
+			}
+		}
+	}
+	
+	private static void appendEscaped(Appendable out, String label) throws IOException {
+		// escape newlines for the DOT format
+		for (int i = 0; i < label.length(); i++) {
+			char c = label.charAt(i);
+			if (c == '\n') {
+				out.append("\\n");
+			} else {
+				out.append(c);
+			}
 		}
-		return String.format(TEMPLATE, stringBuilder);
 	}
 
-	private String createHumanReadableLabel(LabelKey labelKey) {
+	private String createHumanReadableLabel(int node) {
 	    // TODO allow for non-English
 
 	    int maxLabelLength = determineMaxLabelLength();
 
 	    String label;
 
-	    if (labelKey.getAncestorDistance() == 0) {
+	    if (ancestorDistances[node] == 0) {
 		// simplest case, no possessives needed, so just name as A or B, e.g. "you", "niece"
-		label = labelKey.getLabel();
+		label = labels[node];
 	    } else {
 		// else name the ancestor relative to A or B
 
@@ -164,26 +308,24 @@ public class RelationGraph {
 		// will give us a weird-looking left-to-right ordering of the grandparent nodes
 		// so we change their label ids as follows:
 		// 0 -> 1, 1 -> 0, 2 -> 3, 3 -> 2		
-		int counterIdx = labelKey.getAncestorId();
+		int counterIdx = ancestorIds[node];
 		if (maxRelationsInSingleGeneration == 4 // double cousin case, where there are 4 grandparents
-			&& labelKey.getAncestorDistance() == 2) { // this node is one of the 4 grandparents
+			&& ancestorDistances[node] == 2) { // this node is one of the 4 grandparents
 		    	counterIdx += ((counterIdx % 2 == 0) ? 1 : - 1);
 		} 
 		
-		String possessive = labelKey.getLabel().equalsIgnoreCase("you") ? "r" : "'s";
+		String possessive = labels[node].equalsIgnoreCase("you") ? "r" : "'s";
 		label = new StringBuilder()
-		.append(labelKey.getLabel())
+		.append(labels[node])
 		.append(possessive)
 		.append(' ')
 		.append(COUNTER_WORDS[counterIdx])
-		.append(createRelationString(labelKey.getAncestorDistance()))
+		.append(createRelationString(ancestorDistances[node]))
 		.toString();
 	    }
 
 	    // add newlines where appropriate
-	    label = WordWrapper.wordWrap(label, maxLabelLength);
-
-	    return label.replace("\n", "\\n"); // escape newlines for the DOT format
+	    return WordWrapper.wordWrap(label, maxLabelLength);
 	}
 
 	private int determineMaxLabelLength() {
@@ -227,87 +369,40 @@ public class RelationGraph {
 		
 	}
 
-	private void addEdge(String ancestorId, String descendantId) {
-		// DOT notation for a directed graph
-		nodeConnections.add(new StringBuilder(ancestorId)
-                        .append(" -> ")
-                        .append(descendantId).toString());
-		
+	private void addEdge(int ancestorId, int descendantId) {
+		// graphs are small, so just check them all rather than keeping a set
+		for (int i = 0; i < numEdges; i++) {
+			if (edgeAncestors[i] == ancestorId && edgeDescendants[i] == descendantId) {
+				return;
+			}
+		}
+		if (numEdges == edgeAncestors.length) {
+			edgeAncestors = Arrays.copyOf(edgeAncestors, 2 * numEdges);
+			edgeDescendants = Arrays.copyOf(edgeDescendants, 2 * numEdges);
+		}
+		edgeAncestors[numEdges] = ancestorId;
+		edgeDescendants[numEdges] = descendantId;
+		numEdges++;
 	}
 
-	private String getId(String label, int ancestorDistance) {
+	private int getId(String label, int ancestorDistance) {
 		return getId(label, ancestorDistance, 0);
 	}
 	
-	private String getId(String label, int ancestorDistance, int ancestorId) {
-		LabelKey labelKey = new LabelKey(label, ancestorDistance, ancestorId);
-		if (!labels.containsKey(labelKey)) {
-			labels.put(labelKey, nameIterator.next());
-		}
-		return labels.get(labelKey);
-	}
-	
-	private static class LabelKey {
-		private String label;
-		private int ancestorDistance;
-		private int ancestorId;
-		
-		private LabelKey(String label, int ancestorDistance, int ancestorId) {
-			this.label = label;
-			this.ancestorDistance = ancestorDistance;
-			this.ancestorId = ancestorId;
-		}
-		
-		
-		public String getLabel() {
-			return label;
-		}
-
-
-		public int getAncestorDistance() {
-			return ancestorDistance;
-		}
-		
-		public int getAncestorId() {
-			return ancestorId;
-		}
-
-		@Override
-		public int hashCode() {
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + ancestorDistance;
-			result = prime * result + ancestorId;
-			result = prime * result + ((label == null) ? 0 : label.hashCode());
-			return result;
-		}
-
-		@Override
-		public boolean equals(Object obj) {
-			if (this == obj)
-				return true;
-			if (obj == null)
-				return false;
-			if (getClass() != obj.getClass())
-				return false;
-			LabelKey other = (LabelKey) obj;
-			if (ancestorDistance != other.ancestorDistance)
-				return false;
-			if (ancestorId != other.ancestorId)
-				return false;
-			if (label == null) {
-				if (other.label != null)
-					return false;
-			} else if (!label.equals(other.label))
-				return false;
-			return true;
+	private int getId(String label, int ancestorDistance, int ancestorId) {
+		for (int i = 0; i < numNodes; i++) {
+			if (ancestorDistances[i] == ancestorDistance && ancestorIds[i] == ancestorId && labels[i].equals(label)) {
+				return i;
+			}
 		}
-
-		@Override
-		public String toString() {
-			return "LabelKey [label=" + label + ", ancestorDistance="
-					+ ancestorDistance + ", ancestorId=" + ancestorId + "]";
+		if (numNodes == labels.length) {
+			labels = Arrays.copyOf(labels, 2 * numNodes);
+			ancestorDistances = Arrays.copyOf(ancestorDistances, 2 * numNodes);
+			ancestorIds = Arrays.copyOf(ancestorIds, 2 * numNodes);
 		}
+		labels[numNodes] = label;
+		ancestorDistances[numNodes] = ancestorDistance;
+		ancestorIds[numNodes] = ancestorId;
+		return numNodes++;
 	}
-	
 }
@@ -0,0 +1,161 @@
+package com.nolanlawson.relatedness.graph;
+
+import java.io.IOException;
+
+/**
+ * Draws a LayeredLayout as SVG, with the same styling as RelationGraph's DOT output, so that graphs
+ * can be drawn without running Graphviz.  Nodes are ellipses and edges are straight arrows from 
+ * ancestors down to descendants.
+ * 
+ * Stateless, so it's safe to use from any number of threads.
+ * 
+ * @author nolan
+ *
+ */
+class SvgRenderer {
+	
+	private static final String EMPHASIZED_STROKE = "#788c45";
+	private static final String EMPHASIZED_FILL = "#f6f6f6";
+	private static final double EMPHASIZED_STROKE_WIDTH = 3;
+	
+	private SvgRenderer() {
+	}
+
+	/**
+	 * @param labelLines the lines of each node's label
+	 * @param emphasized which nodes to emphasize
+	 * @param edges pairs of {ancestor, descendant}
+	 * @param out
+	 * @throws IOException
+	 */
+	static void render(String[][] labelLines, boolean[] emphasized, int[][] edges, Appendable out) 
+			throws IOException {
+		LayeredLayout layout = new LayeredLayout(labelLines, edges);
+		
+		out.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"");
+		appendNumber(out, layout.getWidth());
+		out.append("pt\" height=\"");
+		appendNumber(out, layout.getHeight());
+		out.append("pt\" viewBox=\"0 0 ");
+		appendNumber(out, layout.getWidth());
+		out.append(' ');
+		appendNumber(out, layout.getHeight());
+		out.append("\">\n")
+				.append("<defs><marker id=\"arrow\" viewBox=\"0 0 10 10\" refX=\"10\" refY=\"5\" ")
+				.append("markerWidth=\"8\" markerHeight=\"8\" orient=\"auto\">")
+				.append("<path d=\"M0,0L10,5L0,10z\"/></marker></defs>\n");
+		
+		// edges first, so the nodes are drawn on top of them
+		out.append("<g stroke=\"black\" marker-end=\"url(#arrow)\">\n");
+		for (int[] edge : edges) {
+			appendEdge(layout, edge[0], edge[1], out);
+		}
+		out.append("</g>\n");
+		
+		out.append("<g font-family=\"Helvetica,Arial,sans-serif\" font-size=\"");
+		appendNumber(out, LayeredLayout.FONT_SIZE);
+		out.append("\" text-anchor=\"middle\">\n");
+		for (int i = 0; i < labelLines.length; i++) {
+			appendNode(layout, i, labelLines[i], emphasized[i], out);
+		}
+		out.append("</g>\n</svg>\n");
+	}
+	
+	private static void appendNode(LayeredLayout layout, int node, String[] lines, boolean emphasize, 
+			Appendable out) throws IOException {
+		out.append("<ellipse cx=\"");
+		appendNumber(out, layout.getX(node));
+		out.append("\" cy=\"");
+		appendNumber(out, layout.getY(node));
+		out.append("\" rx=\"");
+		appendNumber(out, layout.getWidth(node) / 2);
+		out.append("\" ry=\"");
+		appendNumber(out, layout.getHeight(node) / 2);
+		if (emphasize) {
+			out.append("\" fill=\"").append(EMPHASIZED_FILL)
+					.append("\" stroke=\"").append(EMPHASIZED_STROKE)
+					.append("\" stroke-width=\"");
+			appendNumber(out, EMPHASIZED_STROKE_WIDTH);
+		} else {
+			out.append("\" fill=\"white\" stroke=\"black");
+		}
+		out.append("\"/>\n");
+		
+		// center the lines vertically, with the baseline a bit below the middle of each line
+		double firstBaseline = layout.getY(node) - (lines.length - 1) * LayeredLayout.LINE_HEIGHT / 2 
+				+ LayeredLayout.FONT_SIZE / 3;
+		for (int i = 0; i < lines.length; i++) {
+			out.append("<text x=\"");
+			appendNumber(out, layout.getX(node));
+			out.append("\" y=\"");
+			appendNumber(out, firstBaseline + i * LayeredLayout.LINE_HEIGHT);
+			out.append("\">");
+			appendEscaped(out, lines[i]);
+			out.append("</text>\n");
+		}
+	}
+	
+	private static void appendEdge(LayeredLayout layout, int from, int to, Appendable out) 
+			throws IOException {
+		double dx = layout.getX(to) - layout.getX(from);
+		double dy = layout.getY(to) - layout.getY(from);
+		// start and end on the edges of the ellipses, rather than their centers
+		double startScale = scaleToEllipse(dx, dy, layout.getWidth(from) / 2, layout.getHeight(from) / 2);
+		double endScale = scaleToEllipse(dx, dy, layout.getWidth(to) / 2, layout.getHeight(to) / 2);
+		out.append("<line x1=\"");
+		appendNumber(out, layout.getX(from) + dx * startScale);
+		out.append("\" y1=\"");
+		appendNumber(out, layout.getY(from) + dy * startScale);
+		out.append("\" x2=\"");
+		appendNumber(out, layout.getX(to) - dx * endScale);
+		out.append("\" y2=\"");
+		appendNumber(out, layout.getY(to) - dy * endScale);
+		out.append("\"/>\n");
+	}
+	
+	/**
+	 * Fraction of (dx, dy) that lies inside an ellipse centered on the start of it.
+	 */
+	private static double scaleToEllipse(double dx, double dy, double rx, double ry) {
+		double length = Math.sqrt((dx / rx) * (dx / rx) + (dy / ry) * (dy / ry));
+		return length == 0 ? 0 : 1 / length;
+	}
+	
+	/**
+	 * Append a number rounded to one decimal place, without going 
+	 * through String.format() or the default locale.
+	 */
+	private static void appendNumber(Appendable out, double number) throws IOException {
+		long tenths = Math.round(number * 10);
+		if (tenths < 0) {
+			out.append('-');
+			tenths = -tenths;
+		}
+		out.append(Long.toString(tenths / 10));
+		if (tenths % 10 != 0) {
+			out.append('.').append((char) ('0' + tenths % 10));
+		}
+	}
+	
+	private static void appendEscaped(Appendable out, String text) throws IOException {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+				case '&':
+					out.append("&amp;");
+					break;
+				case '<':
+					out.append("&lt;");
+					break;
+				case '>':
+					out.append("&gt;");
+					break;
+				case '"':
+					out.append("&quot;");
+					break;
+				default:
+					out.append(c);
+			}
+		}
+	}
+}
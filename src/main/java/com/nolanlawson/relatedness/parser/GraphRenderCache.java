@@ -0,0 +1,198 @@
+package com.nolanlawson.relatedness.parser;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.nolanlawson.relatedness.Relation;
+import com.nolanlawson.relatedness.UnknownRelationException;
+import com.nolanlawson.relatedness.graph.RelationGraph;
+
+/**
+ * Optional, thread-safe cache of drawn graphs, i.e. RelativeNameParser.parse(name, true).getGraph() 
+ * drawn as DOT, SVG or JSON.  Most requests are for the same few relations ("cousin", "double cousin", 
+ * "dad's cousin"), so a hit skips building the graph and word-wrapping its labels.
+ * 
+ * The node labels depend on the words in the phrase (e.g. "Your dad's parent" vs. "Your father's parent"),
+ * so entries are keyed by the normalized phrase (see RelationParseCache.normalize()) as well as the
+ * Relation it parses to.  The phrase is still parsed on every call to find the Relation, but without 
+ * a graph, which is the cheap part.  Like RelationParseCache, the graph is the one for the normalized
+ * phrase, so its labels are lowercase, e.g. "Your dad's parent" even for "Dad's parent."
+ * 
+ * Entries are weighed by their approximate size in memory, and the least recently used ones are evicted
+ * once the total goes over the maximum weight.
+ * 
+ * @author nolan
+ *
+ */
+public class GraphRenderCache {
+
+    public static enum Format {
+	Dot,
+	Svg,
+	Json,
+    }
+    
+    // rough size of an entry apart from its strings, i.e. the key, the map entry and the string headers
+    private static final int ENTRY_OVERHEAD = 128;
+    
+    private final long maximumWeight;
+    
+    // access-ordered, so iterating starts with the least recently used entry
+    private final LinkedHashMap<Key, String> cache = new LinkedHashMap<Key, String>(16, 0.75F, true);
+    private long weight;
+    
+    private AtomicLong hitCount = new AtomicLong();
+    private AtomicLong missCount = new AtomicLong();
+    private AtomicLong evictionCount = new AtomicLong();
+    
+    /**
+     * Cache that holds at most maximumWeight bytes worth of drawn graphs, approximately.
+     * @param maximumWeight
+     */
+    public GraphRenderCache(long maximumWeight) {
+	this.maximumWeight = maximumWeight;
+    }
+    
+    /**
+     * Same as drawing RelativeNameParser.parse(name, true).getGraph() in the given format, except the
+     * result may come from the cache.
+     * 
+     * @param name
+     * @param format
+     * @return the drawn graph, or null if the phrase has no graph, e.g. because it's ambiguous
+     * @throws UnknownRelationException if the string can't be parsed
+     */
+    public String render(String name, Format format) {
+	String normalized = RelationParseCache.normalize(name);
+	Relation relation = RelativeNameParser.parse(normalized).getRelation();
+	if (relation == null) {
+	    return null;
+	}
+	Key key = new Key(normalized, relation, format);
+	synchronized (cache) {
+	    String rendered = cache.get(key);
+	    if (rendered != null) {
+		hitCount.incrementAndGet();
+		return rendered;
+	    }
+	}
+	missCount.incrementAndGet();
+	// draw it outside of the lock, so misses don't hold up everyone else
+	String rendered = draw(RelativeNameParser.parse(normalized, true).getGraph(), format);
+	long entryWeight = weigh(key, rendered);
+	if (entryWeight <= maximumWeight) {
+	    synchronized (cache) {
+		String previous = cache.put(key, rendered);
+		if (previous != null) { // another thread drew it at the same time
+		    weight -= weigh(key, previous);
+		}
+		weight += entryWeight;
+		evictIfNecessary();
+	    }
+	}
+	return rendered;
+    }
+    
+    private static String draw(RelationGraph graph, Format format) {
+	switch (format) {
+	    case Svg:
+		return graph.drawSvg();
+	    case Json:
+		return graph.drawJson();
+	    case Dot:
+	    default:
+		return graph.drawGraph();
+	}
+    }
+    
+    private void evictIfNecessary() {
+	Iterator<Map.Entry<Key, String>> iterator = cache.entrySet().iterator();
+	while (weight > maximumWeight && iterator.hasNext()) {
+	    Map.Entry<Key, String> eldest = iterator.next();
+	    weight -= weigh(eldest.getKey(), eldest.getValue());
+	    iterator.remove();
+	    evictionCount.incrementAndGet();
+	}
+    }
+    
+    private static long weigh(Key key, String rendered) {
+	// two bytes per char
+	return ENTRY_OVERHEAD + 2L * (key.name.length() + rendered.length());
+    }
+    
+    public long getHitCount() {
+	return hitCount.get();
+    }
+    
+    public long getMissCount() {
+	return missCount.get();
+    }
+    
+    public long getEvictionCount() {
+	return evictionCount.get();
+    }
+    
+    public double getHitRate() {
+	long requests = hitCount.get() + missCount.get();
+	return requests == 0 ? 1.0 : (double) hitCount.get() / requests;
+    }
+    
+    /**
+     * Approximate size of everything in the cache, in bytes.
+     * @return
+     */
+    public long getWeight() {
+	synchronized (cache) {
+	    return weight;
+	}
+    }
+    
+    public int size() {
+	synchronized (cache) {
+	    return cache.size();
+	}
+    }
+    
+    public void clear() {
+	synchronized (cache) {
+	    cache.clear();
+	    weight = 0;
+	}
+    }
+
+    @Override
+    public String toString() {
+	return "GraphRenderCache [size=" + size() + ", weight=" + getWeight() 
+		+ ", hitCount=" + hitCount + ", missCount=" + missCount 
+		+ ", evictionCount=" + evictionCount + "]";
+    }
+    
+    private static class Key {
+	
+	private final String name;
+	private final Relation relation;
+	private final Format format;
+	
+	Key(String name, Relation relation, Format format) {
+	    this.name = name;
+	    this.relation = relation;
+	    this.format = format;
+	}
+
+	@Override
+	public int hashCode() {
+	    return 31 * (31 * name.hashCode() + relation.hashCode()) + format.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+	    if (!(obj instanceof Key)) {
+		return false;
+	    }
+	    Key other = (Key) obj;
+	    return format == other.format && name.equals(other.name) && relation.equals(other.relation);
+	}
+    }
+}
@@ -7,6 +7,18 @@ package com.nolanlawson.relatedness.parser;
  */
 public enum ParseError {
     Ambiguity,
-    StepRelation;
+    StepRelation,
+    
+    // the following are only reported by RelativeNameParser.tryParse(); parse() throws an
+    // UnknownRelationException instead
+    
+    /** part of the string isn't a known relation, e.g. "foobar" */
+    UnknownToken,
+    /** a relation after the first one is missing its "'s", e.g. "cousin daughter" */
+    MissingPossessive,
+    /** one relation can't follow another, e.g. "cousin's cousin" */
+    InvalidProgression,
+    /** a "great" or "half" applied to a relation that can't have one, e.g. "great son" */
+    ImpossibleGreatOrHalf;
     
 }
@@ -22,15 +22,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 
-import com.google.common.base.CharMatcher;
-import com.google.common.base.Function;
-import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableListMultimap;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Ordering;
+import com.google.common.collect.ImmutableMap;
 import com.nolanlawson.relatedness.BasicRelation;
 
 /**
@@ -55,9 +52,10 @@ public class ParseVocabulary {
 	    Sibling, Cousin, AuntOrUncle, NieceOrNephew, SecondCousin, ThirdCousin, FourthCousin,
 	    FifthCousin, SixthCousin, SeventhCousin, EighthCousin);
 
-    public static final Pattern AMBIGUOUS_TWIN_PATTERN = Pattern.compile("(?<!(?:fraternal|identical) )twin");
+    public static final Pattern AMBIGUOUS_TWIN_PATTERN = Pattern.compile("(?<!(?:fraternal|identical) )twin", 
+	    Pattern.CASE_INSENSITIVE);
     public static final List<String> AMBIGUOUS_TWIN_RESOLUTIONS = Arrays.asList("fraternal twin", "identical twin");
-    public static final Pattern STEP_PATTERN = Pattern.compile("step|in-law|inlaw");
+    public static final Pattern STEP_PATTERN = Pattern.compile("step|in-law|inlaw", Pattern.CASE_INSENSITIVE);
     
     public static final ImmutableListMultimap<BasicRelation, String> VOCABULARY = new ImmutableListMultimap.Builder<BasicRelation, String>()
 	    .putAll(Parent, "parent", "father", "mother", "dad", "mom", "mum",
@@ -80,6 +78,29 @@ public class ParseVocabulary {
 	    .putAll(IdenticalTwin, "identical twin")
 	    .build();
 
+    // the one name for each relation used when generating names.  These are gender-neutral where the
+    // vocabulary has such a name, but there's none for aunts/uncles or nieces/nephews, so those just
+    // use the first name listed in the VOCABULARY
+    public static final Map<BasicRelation, String> CANONICAL_NAMES = new ImmutableMap.Builder<BasicRelation, String>()
+	    .put(Parent, "parent")
+	    .put(Child, "child")
+	    .put(Sibling, "sibling")
+	    .put(Cousin, "cousin")
+	    .put(SecondCousin, "second cousin")
+	    .put(ThirdCousin, "third cousin")
+	    .put(FourthCousin, "fourth cousin")
+	    .put(FifthCousin, "fifth cousin")
+	    .put(SixthCousin, "sixth cousin")
+	    .put(SeventhCousin, "seventh cousin")
+	    .put(EighthCousin, "eighth cousin")
+	    .put(Grandparent, "grandparent")
+	    .put(Grandchild, "grandchild")
+	    .put(AuntOrUncle, "aunt")
+	    .put(NieceOrNephew, "niece")
+	    .put(DoubleFirstCousin, "double cousin")
+	    .put(IdenticalTwin, "identical twin")
+	    .build();
+
     public static final Pattern SPACES_AND_HYPHENS = Pattern
 	    .compile("[\\-\\s]");
 
@@ -94,85 +115,19 @@ public class ParseVocabulary {
     
     public static final String REMOVED = "removed";
     
-    // once removed, three times removes, etc.
-    public static final String REMOVED_PATTERN = 
-	    "(?:once|twice|thrice|" +
-	    "(?:one|two|three|four|five|six|seven|eight|nine|1|2|3|4|5|6|7|8|9) times) removed";
+    private static final List<String> NUMBER_WORDS = Arrays.asList("one", "two", "three", "four", "five", 
+	    "six", "seven", "eight", "nine");
+    
+    // once removed, three times removed, etc., mapped to the number of times removed
+    public static final Map<String, Integer> REMOVED_PHRASES = createRemovedPhrases();
     
     // 's is the English possessive clitic
     public static final String POSSESSIVE = "'s";
-    
-    // one or more greats
-    private static final String GREATS_PATTERN = "((?:" + GREAT + "[ -]?)*)";
-    
-    // one or zero halfs
-    private static final String HALF_PATTERN = "((?:" + HALF + "[ -]?)?)";
-    
-    
-    public static final String BASIC_RELATIVE_PATTERN = 
-	    
-	    "((?:" + POSSESSIVE + "\\s+)?)" + // optional possessive "'s"
-    	    "(?:" +	
-    									    
-    	    // greats before half
-    	    GREATS_PATTERN +
-    	    HALF_PATTERN +
-    	    "|" +
-    	    // half before greats
-    	    HALF_PATTERN +
-    	    GREATS_PATTERN +
-    	    ")" +
-    	    
-    	    "(%s)" +
-    	    "([ ,]+" + REMOVED_PATTERN + ")?";
-
-    private static final List<String> REMOVED_RESOLUTIONS = Arrays.asList("on", "tw", "thr", 
-	    "four", "five", "six", "seven", "eight", "nine");
-    
-    public static final Pattern RELATIVE_PATTERN = createRelativePattern();
 
-    /**
-     * Given a string like "once removed", "3 times removed", return an int corresponding to the ordinal
-     * @param removedString
-     * @return
-     */
-    public static int determineTimesRemoved(String removedString) {
-	for (int i = 0; i < REMOVED_RESOLUTIONS.size(); i++) {
-	    if (removedString.contains(REMOVED_RESOLUTIONS.get(i)) 
-		    || removedString.contains(Integer.toString(i + 1))) {
-		return i + 1;
-	    }
-	}
-	throw new RuntimeException("invalid 'removed' string: " + removedString); // should not happen
-    }
-    
     public static final List<String> ORDERED_ASCENDING_RELATIONS = fillList("parent", "grandparent", 9);
     public static final List<String> ORDERED_DESCENDING_RELATIONS = fillList("child", "grandchild", 9);
     
     
-    /**
-     * Create the Pattern to identify relative phrases, e.g. "cousin" or
-     * "grandma's uncle";
-     * 
-     * @return
-     */
-    private static Pattern createRelativePattern() {
-
-	// sort from longest to shortest to avoid greedy regexes taking the
-	// shorter string
-	String vocabTermsAsPattern = Joiner.on('|').join(
-		orderByLength().reverse()
-			.sortedCopy(
-				Iterables.transform(VOCABULARY.values(),
-					expandRegex())));
-
-	String patternString = String.format(BASIC_RELATIVE_PATTERN,
-		vocabTermsAsPattern.toString());
-
-	return Pattern.compile(patternString, Pattern.CASE_INSENSITIVE
-		| Pattern.DOTALL);
-    }
-
     /**
      * generate a list of English relations up to the number of times, e.g. "parent", "grandparent", "great-grandparent", etc.
      * @param firstRelation
@@ -193,31 +148,15 @@ public class ParseVocabulary {
 	return result;
     }
 
-    private static Ordering<String> orderByLength() {
-	return new Ordering<String>() {
-
-	    @Override
-	    public int compare(String left, String right) {
-		return left.length() - right.length();
-	    }
-
-	};
-    }
-
-    /**
-     * spaces should be replaceable with "" or "-", e.g. in the case of
-     * half-sister, half sister, great grandpa, great-grandpa, greatgrandpa,
-     * etc.
-     * 
-     * @return
-     */
-    private static Function<String, String> expandRegex() {
-	return new Function<String, String>() {
-
-	    public String apply(String input) {
-		return CharMatcher.is(' ').replaceFrom(input, "[ -]?");
-	    }
-	};
+    private static Map<String, Integer> createRemovedPhrases() {
+	ImmutableMap.Builder<String, Integer> builder = new ImmutableMap.Builder<String, Integer>()
+		.put("once " + REMOVED, 1)
+		.put("twice " + REMOVED, 2)
+		.put("thrice " + REMOVED, 3);
+	for (int i = 0; i < NUMBER_WORDS.size(); i++) {
+	    builder.put(NUMBER_WORDS.get(i) + " times " + REMOVED, i + 1)
+		    .put((i + 1) + " times " + REMOVED, i + 1);
+	}
+	return builder.build();
     }
-
 }
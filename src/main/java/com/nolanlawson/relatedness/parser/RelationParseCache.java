@@ -0,0 +1,144 @@
+package com.nolanlawson.relatedness.parser;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.collect.MapEvictionListener;
+import com.google.common.collect.MapMaker;
+import com.nolanlawson.relatedness.UnknownRelationException;
+
+/**
+ * Optional, thread-safe cache in front of RelativeNameParser.parse(), for when the same phrases
+ * get parsed over and over again (e.g. "cousin", "dad's cousin", "second cousin once removed").
+ * 
+ * Phrases are normalized before being looked up, so "Dad's  Cousin" and "dad's cousin" share an entry,
+ * and the cached result is the result of parsing the normalized phrase.  Only case and runs of
+ * whitespace are normalized, because e.g. "dad's cousin" and "dad'scousin" don't parse the same.
+ * The parser ignores both of those anyway, so the results are the same as parse()'s, except that
+ * any strings in them (ambiguity resolutions, error messages) are lowercase.
+ * 
+ * Failed parses are cached too, so it's cheapest to use tryParse().  Graphs are never created.
+ * 
+ * @author nolan
+ *
+ */
+public class RelationParseCache {
+
+    private ConcurrentMap<String, RelationParseResult> cache;
+    
+    private AtomicLong hitCount = new AtomicLong();
+    private AtomicLong missCount = new AtomicLong();
+    private AtomicLong evictionCount = new AtomicLong();
+    
+    /**
+     * Cache that holds at most maximumSize results, evicting the least recently used ones first.
+     * @param maximumSize
+     */
+    public RelationParseCache(int maximumSize) {
+	this(new MapMaker().maximumSize(maximumSize));
+    }
+    
+    /**
+     * Cache that holds at most maximumSize results, and also evicts any result that hasn't been 
+     * used for the given amount of time.
+     * @param maximumSize
+     * @param expireAfterAccess
+     * @param timeUnit
+     */
+    public RelationParseCache(int maximumSize, long expireAfterAccess, TimeUnit timeUnit) {
+	this(new MapMaker().maximumSize(maximumSize).expireAfterAccess(expireAfterAccess, timeUnit));
+    }
+    
+    private RelationParseCache(MapMaker mapMaker) {
+	cache = mapMaker.evictionListener(new MapEvictionListener<String, RelationParseResult>() {
+
+	    public void onEviction(String key, RelationParseResult value) {
+		evictionCount.incrementAndGet();
+	    }
+	}).makeMap();
+    }
+    
+    /**
+     * Same as RelativeNameParser.parse(name), except the result may come from the cache.  The
+     * returned result belongs to the caller, so it's safe to modify.
+     * 
+     * @param name
+     * @return
+     * @throws UnknownRelationException if the string can't be parsed
+     */
+    public RelationParseResult parse(String name) {
+	RelationParseResult result = tryParse(name);
+	if (isFailure(result.getParseError())) {
+	    // parse it again, just to get the exception with the right message
+	    return RelativeNameParser.parse(normalize(name));
+	}
+	return result;
+    }
+    
+    /**
+     * Same as RelativeNameParser.tryParse(name), except the result may come from the cache.  The
+     * returned result belongs to the caller, so it's safe to modify.
+     * 
+     * @param name
+     * @return
+     */
+    public RelationParseResult tryParse(String name) {
+	String key = normalize(name);
+	RelationParseResult result = cache.get(key);
+	if (result != null) {
+	    hitCount.incrementAndGet();
+	} else {
+	    missCount.incrementAndGet();
+	    result = RelativeNameParser.tryParse(key);
+	    RelationParseResult existing = cache.putIfAbsent(key, result);
+	    if (existing != null) { // another thread beat us to it
+		result = existing;
+	    }
+	}
+	// nobody outside of this class ever sees the cached instance
+	return (RelationParseResult) result.clone();
+    }
+    
+    private static boolean isFailure(ParseError parseError) {
+	return parseError != null && parseError != ParseError.Ambiguity 
+		&& parseError != ParseError.StepRelation;
+    }
+    
+    /**
+     * Normalize the phrase used as a key, i.e. lowercase it and collapse all whitespace to single spaces.
+     * @param name
+     * @return
+     */
+    public static String normalize(String name) {
+	return CharMatcher.WHITESPACE.trimAndCollapseFrom(name, ' ').toLowerCase();
+    }
+    
+    public long getHitCount() {
+	return hitCount.get();
+    }
+    
+    public long getMissCount() {
+	return missCount.get();
+    }
+    
+    public long getEvictionCount() {
+	return evictionCount.get();
+    }
+    
+    public int size() {
+	return cache.size();
+    }
+    
+    public void clear() {
+	cache.clear();
+    }
+
+    @Override
+    public String toString() {
+	return "RelationParseCache [size=" + size() + ", hitCount=" + hitCount
+		+ ", missCount=" + missCount + ", evictionCount="
+		+ evictionCount + "]";
+    }
+}
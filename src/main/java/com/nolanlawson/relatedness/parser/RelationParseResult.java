@@ -1,5 +1,6 @@
 package com.nolanlawson.relatedness.parser;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import com.nolanlawson.relatedness.Relation;
@@ -10,7 +11,7 @@ import com.nolanlawson.relatedness.graph.RelationGraph;
  * @author nolan
  *
  */
-public class RelationParseResult {
+public class RelationParseResult implements Cloneable {
 
     private ParseError parseError;
     private Relation relation;
@@ -41,6 +42,20 @@ public class RelationParseResult {
     public void setGraph(RelationGraph graph) {
         this.graph = graph;
     }
+    
+    /**
+     * Copy of this result that can be modified without affecting the original.  The relation is
+     * immutable, so it's shared, and so is the graph, if any.
+     */
+    public Object clone() {
+	RelationParseResult result = new RelationParseResult();
+	result.parseError = parseError;
+	result.relation = relation;
+	result.ambiguityResolutions = ambiguityResolutions == null 
+		? null : new ArrayList<String>(ambiguityResolutions);
+	result.graph = graph;
+	return result;
+    }
     @Override
     public String toString() {
 	return "RelationParseResult [parseError=" + parseError + ", relation="
@@ -0,0 +1,258 @@
+package com.nolanlawson.relatedness.parser;
+
+import static com.nolanlawson.relatedness.parser.ParseVocabulary.CANONICAL_NAMES;
+import static com.nolanlawson.relatedness.parser.ParseVocabulary.GREAT;
+import static com.nolanlawson.relatedness.parser.ParseVocabulary.GREATABLE_RELATIONS;
+import static com.nolanlawson.relatedness.parser.ParseVocabulary.HALF;
+import static com.nolanlawson.relatedness.parser.ParseVocabulary.HALFABLE_RELATIONS;
+import static com.nolanlawson.relatedness.parser.ParseVocabulary.POSSESSIVE;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+import com.nolanlawson.relatedness.BasicRelation;
+import com.nolanlawson.relatedness.CommonAncestor;
+import com.nolanlawson.relatedness.Relation;
+
+/**
+ * The reverse of the RelativeNameParser: given a Relation, come up with the shortest English name
+ * for it, e.g. "great-aunt" or "grandparent's cousin".
+ * 
+ * Every relation that can be named in one or two terms, with distances up to maxDepth, is looked up 
+ * in a table built up front.  Anything else is named by working out the ancestor-sideways-descendant
+ * shape of the relation, and remembered afterwards.  Names are always checked by parsing them
+ * back again, so RelativeNameParser.parse(generate(relation)) always gives back the same relation.
+ * 
+ * "Removed" is never used, because the parser considers "cousin once removed" to be ambiguous.
+ * 
+ * @author nolan
+ *
+ */
+public class RelativeNameGenerator {
+
+    public static final int DEFAULT_MAX_DEPTH = 4;
+    private static final int DEFAULT_CACHE_SIZE = 1000;
+
+    // returned from the cache when a relation has no name, since the cache can't hold nulls
+    private static final String NO_NAME = "";
+
+    private static final Comparator<CommonAncestor> ANCESTOR_ORDER = new Comparator<CommonAncestor>() {
+
+	public int compare(CommonAncestor first, CommonAncestor second) {
+	    return ComparisonChain.start()
+		    .compare(first.getDistanceFromFirst(), second.getDistanceFromFirst())
+		    .compare(first.getDistanceFromSecond(), second.getDistanceFromSecond())
+		    .result();
+	}
+    };
+
+    private final int maxDepth;
+    private final Map<Relation, String> table;
+    private final ConcurrentMap<Relation, String> cache;
+
+    public RelativeNameGenerator() {
+	this(DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * @param maxDepth
+     *            largest ancestor distance for relations in the precomputed table
+     */
+    public RelativeNameGenerator(int maxDepth) {
+	Preconditions.checkArgument(maxDepth >= 1, "maxDepth must be positive: %s", maxDepth);
+	this.maxDepth = maxDepth;
+	this.table = createTable(maxDepth);
+	this.cache = new MapMaker().maximumSize(DEFAULT_CACHE_SIZE).makeMap();
+    }
+
+    /**
+     * Generate the shortest name for the relation, e.g. "cousin" or "grandparent's sibling", or null
+     * if there's no way to name it with the ParseVocabulary, e.g. for oneself.
+     * 
+     * @param relation
+     * @return
+     */
+    public String generate(Relation relation) {
+	Relation canonical = canonicalize(relation);
+	String result = table.get(canonical);
+	if (result != null) {
+	    return result;
+	}
+	result = cache.get(canonical);
+	if (result == null) {
+	    result = search(canonical);
+	    cache.put(canonical, result);
+	}
+	return result == NO_NAME ? null : result;
+    }
+
+    public int getMaxDepth() {
+	return maxDepth;
+    }
+
+    /**
+     * Number of relations in the precomputed table.
+     * @return
+     */
+    public int getTableSize() {
+	return table.size();
+    }
+
+    private static Map<Relation, String> createTable(int maxDepth) {
+
+	// every single term, with every number of greats and halfs that fits
+	List<String> terms = Lists.newArrayList();
+	for (BasicRelation basicRelation : CANONICAL_NAMES.keySet()) {
+	    int maxGreats = GREATABLE_RELATIONS.contains(basicRelation) ? maxDepth : 0;
+	    for (int numGreats = 0; numGreats <= maxGreats; numGreats++) {
+		terms.add(createTerm(basicRelation, numGreats, false));
+		if (HALFABLE_RELATIONS.contains(basicRelation)) {
+		    terms.add(createTerm(basicRelation, numGreats, true));
+		}
+	    }
+	}
+
+	// and then every pair of terms, keeping the shortest name for each relation
+	Map<Relation, String> result = Maps.newHashMap();
+	for (String first : terms) {
+	    putIfShorter(result, first, maxDepth);
+	    for (String second : terms) {
+		putIfShorter(result, first + POSSESSIVE + ' ' + second, maxDepth);
+	    }
+	}
+	return ImmutableMap.copyOf(result);
+    }
+
+    private static void putIfShorter(Map<Relation, String> table, String name, int maxDepth) {
+	Relation relation = parse(name);
+	if (relation == null) {
+	    return;
+	}
+	for (CommonAncestor commonAncestor : relation.getCommonAncestors()) {
+	    if (commonAncestor.getDistanceFromFirst() > maxDepth
+		    || commonAncestor.getDistanceFromSecond() > maxDepth) {
+		return;
+	    }
+	}
+	String existing = table.get(relation);
+	if (existing == null || name.length() < existing.length()) {
+	    table.put(relation, name);
+	}
+    }
+
+    /**
+     * Name relations outside of the table.  Only handles the usual shape of relation, where every
+     * common ancestor (at most two) is the same distance away, which is then named as an 
+     * ancestor's sideways relation, or a sideways relation's descendant.
+     */
+    private static String search(Relation relation) {
+	List<CommonAncestor> commonAncestors = relation.getCommonAncestors();
+	if (commonAncestors.isEmpty() || relation.getRelatednessFactor() != 1 || commonAncestors.size() > 2
+		|| !commonAncestors.get(0).equals(commonAncestors.get(commonAncestors.size() - 1))) {
+	    return NO_NAME;
+	}
+	boolean half = commonAncestors.size() == 1;
+	int up = commonAncestors.get(0).getDistanceFromFirst();
+	int down = commonAncestors.get(0).getDistanceFromSecond();
+
+	List<String> candidates = Lists.newArrayList();
+	if (down == 0) {
+	    if (half && up > 0) {
+		candidates.add(createLineal(up, BasicRelation.Parent, BasicRelation.Grandparent));
+	    }
+	} else if (up == 0) {
+	    if (half) {
+		candidates.add(createLineal(down, BasicRelation.Child, BasicRelation.Grandchild));
+	    }
+	} else {
+	    int sideways = Math.min(up, down);
+	    String sidewaysTerm = createSideways(sideways, half);
+	    if (up > down) {
+		if (sideways == 1) { // e.g. great-great-aunt
+		    candidates.add(createTerm(BasicRelation.AuntOrUncle, up - 2, half));
+		}
+		if (sidewaysTerm != null) {
+		    candidates.add(createLineal(up - sideways, BasicRelation.Parent, BasicRelation.Grandparent)
+			    + POSSESSIVE + ' ' + sidewaysTerm);
+		}
+	    } else if (down > up) {
+		if (sideways == 1) { // e.g. great-great-niece
+		    candidates.add(createTerm(BasicRelation.NieceOrNephew, down - 2, half));
+		}
+		if (sidewaysTerm != null) {
+		    candidates.add(sidewaysTerm + POSSESSIVE + ' '
+			    + createLineal(down - sideways, BasicRelation.Child, BasicRelation.Grandchild));
+		}
+	    } else if (sidewaysTerm != null) {
+		candidates.add(sidewaysTerm);
+	    }
+	}
+
+	String result = NO_NAME;
+	for (String candidate : candidates) {
+	    if ((result == NO_NAME || candidate.length() < result.length()) && relation.equals(parse(candidate))) {
+		result = candidate;
+	    }
+	}
+	return result;
+    }
+
+    /**
+     * e.g. "sibling" for 1, "cousin" for 2, "second cousin" for 3
+     */
+    private static String createSideways(int distance, boolean half) {
+	if (distance == 1) {
+	    return createTerm(BasicRelation.Sibling, 0, half);
+	}
+	for (Entry<BasicRelation, String> entry : CANONICAL_NAMES.entrySet()) {
+	    Relation relation = entry.getKey().getRelation();
+	    if (relation.getCommonAncestors().size() == 2 && relation.getRelatednessFactor() == 1
+		    && relation.getCommonAncestors().get(0).equals(CommonAncestor.valueOf(distance, distance))) {
+		return createTerm(entry.getKey(), 0, half);
+	    }
+	}
+	return null; // past eighth cousin
+    }
+
+    /**
+     * e.g. "parent", "grandparent", "great-grandparent"
+     */
+    private static String createLineal(int distance, BasicRelation first, BasicRelation second) {
+	return distance == 1 ? CANONICAL_NAMES.get(first) : createTerm(second, distance - 2, false);
+    }
+
+    private static String createTerm(BasicRelation basicRelation, int numGreats, boolean half) {
+	StringBuilder stringBuilder = new StringBuilder();
+	if (half) {
+	    stringBuilder.append(HALF).append('-');
+	}
+	for (int i = 0; i < numGreats; i++) {
+	    stringBuilder.append(GREAT).append('-');
+	}
+	return stringBuilder.append(CANONICAL_NAMES.get(basicRelation)).toString();
+    }
+
+    private static Relation parse(String name) {
+	RelationParseResult result = RelativeNameParser.tryParse(name);
+	return result.getParseError() == null ? canonicalize(result.getRelation()) : null;
+    }
+
+    /**
+     * Same relation, with the common ancestors in a fixed order, so equal relations are equal().
+     */
+    private static Relation canonicalize(Relation relation) {
+	List<CommonAncestor> commonAncestors = Lists.newArrayList(relation.getCommonAncestors());
+	Collections.sort(commonAncestors, ANCESTOR_ORDER);
+	return new Relation(relation.getRelatednessFactor(), commonAncestors).intern();
+    }
+}
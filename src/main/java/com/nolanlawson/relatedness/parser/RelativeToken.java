@@ -0,0 +1,101 @@
+package com.nolanlawson.relatedness.parser;
+
+import com.nolanlawson.relatedness.BasicRelation;
+
+/**
+ * A single relative phrase found by the RelativeTokenizer, e.g. "'s great-half-uncle" or
+ * "second cousin once removed".  Holds the offsets of each part within the original string.
+ *
+ * @author nolan
+ *
+ */
+public class RelativeToken {
+
+    private int start;
+    private int modifiersStart;
+    private int termStart;
+    private int termEnd;
+    private int end;
+    private int numGreats;
+    private boolean half;
+    private BasicRelation basicRelation;
+    private int timesRemoved;
+
+    RelativeToken(int start, int modifiersStart, int numGreats, boolean half, int termStart, int termEnd,
+	    BasicRelation basicRelation, int timesRemoved, int end) {
+	this.start = start;
+	this.modifiersStart = modifiersStart;
+	this.numGreats = numGreats;
+	this.half = half;
+	this.termStart = termStart;
+	this.termEnd = termEnd;
+	this.basicRelation = basicRelation;
+	this.timesRemoved = timesRemoved;
+	this.end = end;
+    }
+
+    /**
+     * start of the whole token, including the possessive
+     */
+    public int getStart() {
+	return start;
+    }
+
+    /**
+     * start of the "great"s and "half"s, i.e. the end of the possessive
+     */
+    public int getModifiersStart() {
+	return modifiersStart;
+    }
+
+    public boolean hasPossessive() {
+	return modifiersStart > start;
+    }
+
+    public int getTermStart() {
+	return termStart;
+    }
+
+    public int getTermEnd() {
+	return termEnd;
+    }
+
+    /**
+     * end of the whole token, including "once removed" etc.
+     */
+    public int getEnd() {
+	return end;
+    }
+
+    public int getNumGreats() {
+	return numGreats;
+    }
+
+    public boolean isHalf() {
+	return half;
+    }
+
+    public BasicRelation getBasicRelation() {
+	return basicRelation;
+    }
+
+    /**
+     * 0 if there was no "once removed", "twice removed", etc.
+     */
+    public int getTimesRemoved() {
+	return timesRemoved;
+    }
+
+    public boolean isRemoved() {
+	return timesRemoved > 0;
+    }
+
+    @Override
+    public String toString() {
+	return "RelativeToken [start=" + start + ", modifiersStart="
+		+ modifiersStart + ", termStart=" + termStart + ", termEnd="
+		+ termEnd + ", end=" + end + ", numGreats=" + numGreats
+		+ ", half=" + half + ", basicRelation=" + basicRelation
+		+ ", timesRemoved=" + timesRemoved + "]";
+    }
+}
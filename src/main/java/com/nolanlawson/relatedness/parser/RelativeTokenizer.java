@@ -0,0 +1,175 @@
+package com.nolanlawson.relatedness.parser;
+
+import static com.nolanlawson.relatedness.parser.ParseVocabulary.GREAT;
+import static com.nolanlawson.relatedness.parser.ParseVocabulary.HALF;
+import static com.nolanlawson.relatedness.parser.ParseVocabulary.POSSESSIVE;
+import static com.nolanlawson.relatedness.parser.ParseVocabulary.REMOVED_PHRASES;
+import static com.nolanlawson.relatedness.parser.ParseVocabulary.VOCABULARY;
+
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.nolanlawson.relatedness.BasicRelation;
+import com.nolanlawson.relatedness.util.DeterministicAutomaton;
+
+/**
+ * Splits a string like "grandma's great-great-half-uncle's second cousin" into RelativeTokens.
+ *
+ * Each token has the form:
+ *
+ * [possessive] [greats then an optional half | a half then greats] term [removed]
+ *
+ * Everything is read in a single left-to-right pass with no backtracking: the
+ * "great"s and "half"s are read greedily (no vocabulary term starts with either
+ * word), and the term and "removed" parts are each the longest match in a
+ * DeterministicAutomaton built from the ParseVocabulary.  So tokenizing is O(n)
+ * in the length of the input, however long or nasty it is.
+ *
+ * @author nolan
+ *
+ */
+public class RelativeTokenizer {
+
+    private static final CharMatcher RELEVANT_CHARACTERS = CharMatcher.JAVA_LETTER_OR_DIGIT;
+
+    // same as the regex \s
+    private static final CharMatcher WHITESPACE = CharMatcher.anyOf(" \t\n\u000B\f\r");
+    private static final CharMatcher GREAT_OR_HALF_SEPARATOR = CharMatcher.anyOf(" -");
+    private static final CharMatcher REMOVED_SEPARATOR = CharMatcher.anyOf(" ,");
+
+    private static final DeterministicAutomaton<BasicRelation> TERM_AUTOMATON = createTermAutomaton();
+    private static final DeterministicAutomaton<Integer> REMOVED_AUTOMATON =
+	    DeterministicAutomaton.compile(REMOVED_PHRASES, false);
+
+    private RelativeTokenizer() {
+    }
+
+    /**
+     * Find the next token, starting at the given index.  Only irrelevant characters (whitespace,
+     * punctuation) are skipped over on the way; if a letter or digit is reached that doesn't start
+     * a token, returns null, because there's no way to parse the rest of the string anyway.
+     *
+     * @param input
+     * @param fromIndex
+     * @return the token, or null if there are no more
+     */
+    public static RelativeToken nextToken(CharSequence input, int fromIndex) {
+	for (int i = fromIndex; i < input.length(); i++) {
+	    RelativeToken token = tokenAt(input, i);
+	    if (token != null) {
+		return token;
+	    } else if (RELEVANT_CHARACTERS.matches(input.charAt(i))) {
+		return null;
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Read a token starting exactly at the given index, or return null if there isn't one.
+     *
+     * @param input
+     * @param start
+     * @return
+     */
+    public static RelativeToken tokenAt(CharSequence input, int start) {
+
+	int idx = start;
+
+	// optional possessive "'s", which must be followed by whitespace
+	if (regionMatches(input, idx, POSSESSIVE)) {
+	    int afterPossessive = idx + POSSESSIVE.length();
+	    int afterWhitespace = skip(input, afterPossessive, WHITESPACE);
+	    if (afterWhitespace > afterPossessive) {
+		idx = afterWhitespace;
+	    }
+	}
+	int modifiersStart = idx;
+
+	// greats before an optional half, or a half before greats
+	int numGreats = 0;
+	boolean half = false;
+	boolean halfAfterGreats = false;
+	while (true) {
+	    if ((!half || !halfAfterGreats) && regionMatches(input, idx, GREAT)) {
+		numGreats++;
+		idx = skipOne(input, idx + GREAT.length(), GREAT_OR_HALF_SEPARATOR);
+	    } else if (!half && regionMatches(input, idx, HALF)) {
+		half = true;
+		halfAfterGreats = numGreats > 0;
+		idx = skipOne(input, idx + HALF.length(), GREAT_OR_HALF_SEPARATOR);
+	    } else {
+		break;
+	    }
+	}
+
+	// the term itself, e.g. "cousin"
+	int termStart = idx;
+	int termEnd = TERM_AUTOMATON.longestMatch(input, termStart);
+	if (termEnd == -1) {
+	    return null;
+	}
+	BasicRelation basicRelation = valueOfMatch(TERM_AUTOMATON, input, termStart, termEnd);
+
+	// optional "once removed", "2 times removed", etc.
+	int end = termEnd;
+	int timesRemoved = 0;
+	int removedStart = skip(input, termEnd, REMOVED_SEPARATOR);
+	if (removedStart > termEnd) {
+	    int removedEnd = REMOVED_AUTOMATON.longestMatch(input, removedStart);
+	    if (removedEnd != -1) {
+		timesRemoved = valueOfMatch(REMOVED_AUTOMATON, input, removedStart, removedEnd);
+		end = removedEnd;
+	    }
+	}
+
+	return new RelativeToken(start, modifiersStart, numGreats, half, termStart, termEnd,
+		basicRelation, timesRemoved, end);
+    }
+
+    private static <T> T valueOfMatch(DeterministicAutomaton<T> automaton, CharSequence input,
+	    int start, int end) {
+	int state = automaton.getStartState();
+	for (int i = start; i < end; i++) {
+	    state = automaton.step(state, input.charAt(i));
+	}
+	return automaton.getValue(state);
+    }
+
+    private static boolean regionMatches(CharSequence input, int idx, String lowercaseWord) {
+	if (idx + lowercaseWord.length() > input.length()) {
+	    return false;
+	}
+	for (int i = 0; i < lowercaseWord.length(); i++) {
+	    if (Character.toLowerCase(input.charAt(idx + i)) != lowercaseWord.charAt(i)) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    private static int skip(CharSequence input, int idx, CharMatcher charMatcher) {
+	while (idx < input.length() && charMatcher.matches(input.charAt(idx))) {
+	    idx++;
+	}
+	return idx;
+    }
+
+    private static int skipOne(CharSequence input, int idx, CharMatcher charMatcher) {
+	return (idx < input.length() && charMatcher.matches(input.charAt(idx))) ? idx + 1 : idx;
+    }
+
+    private static DeterministicAutomaton<BasicRelation> createTermAutomaton() {
+	Map<String, BasicRelation> terms = Maps.newLinkedHashMap();
+	for (Entry<BasicRelation, String> entry : VOCABULARY.entries()) {
+	    // greats and halfs are read greedily, which only works if no term could also start that way
+	    Preconditions.checkState(!entry.getValue().startsWith(GREAT) && !entry.getValue().startsWith(HALF),
+		    "ambiguous vocabulary term: %s", entry.getValue());
+	    terms.put(entry.getValue(), entry.getKey());
+	}
+	return DeterministicAutomaton.compile(terms, true);
+    }
+}
@@ -0,0 +1,203 @@
+package com.nolanlawson.relatedness.pedigree;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+import com.nolanlawson.relatedness.CommonAncestor;
+import com.nolanlawson.relatedness.Relation;
+
+/**
+ * Precomputed ancestors of every individual in a Pedigree, for quickly answering "what is 
+ * person A to person B" as a Relation that can go to the RelatednessCalculator or RelationGraph.
+ * 
+ * Each individual's ancestors (including themselves, at distance 0) are stored as a sorted run of 
+ * ids in one big int array, with the shortest distance to each one in a parallel byte array.
+ * Only ancestors up to maxDepth generations back are kept, which bounds both the size of the index
+ * and the time per query: finding the common ancestors is a single merge of two sorted runs.
+ * 
+ * @author nolan
+ *
+ */
+public class AncestryIndex {
+
+	/**
+	 * Largest allowed maxDepth, since distances are stored as bytes.
+	 */
+	public static final int MAX_DEPTH = Byte.MAX_VALUE;
+	
+	private final int maxDepth;
+	// ancestors of individual i are in [offsets[i], offsets[i + 1])
+	private final int[] offsets;
+	private final int[] ancestors;
+	private final byte[] distances;
+	
+	private AncestryIndex(int maxDepth, int[] offsets, int[] ancestors, byte[] distances) {
+		this.maxDepth = maxDepth;
+		this.offsets = offsets;
+		this.ancestors = ancestors;
+		this.distances = distances;
+	}
+	
+	/**
+	 * Index the given pedigree, keeping ancestors up to maxDepth generations back.  Changes to the
+	 * pedigree afterwards aren't reflected in the index.
+	 * @param pedigree
+	 * @param maxDepth
+	 * @return
+	 */
+	public static AncestryIndex build(Pedigree pedigree, int maxDepth) {
+		Preconditions.checkArgument(maxDepth >= 0 && maxDepth <= MAX_DEPTH, 
+				"maxDepth must be between 0 and %s: %s", MAX_DEPTH, maxDepth);
+		
+		int size = pedigree.size();
+		int[] offsets = new int[size + 1];
+		int[] ancestors = new int[Math.max(16, size)];
+		byte[] distances = new byte[ancestors.length];
+		int length = 0;
+		
+		// ids are in topological order, so both parents are always indexed already
+		for (int i = 0; i < size; i++) {
+			offsets[i] = length;
+			int father = pedigree.getFather(i);
+			int mother = pedigree.getMother(i);
+			int fatherIdx = father == Pedigree.UNKNOWN ? 0 : offsets[father];
+			int fatherEnd = father == Pedigree.UNKNOWN ? 0 : offsets[father + 1];
+			int motherIdx = mother == Pedigree.UNKNOWN ? 0 : offsets[mother];
+			int motherEnd = mother == Pedigree.UNKNOWN ? 0 : offsets[mother + 1];
+			
+			int maxLength = length + (fatherEnd - fatherIdx) + (motherEnd - motherIdx) + 1;
+			if (maxLength > ancestors.length) {
+				int newCapacity = Math.max(maxLength, ancestors.length * 2);
+				ancestors = Arrays.copyOf(ancestors, newCapacity);
+				distances = Arrays.copyOf(distances, newCapacity);
+			}
+			
+			// merge the parents' ancestors, one generation further back
+			while (fatherIdx < fatherEnd || motherIdx < motherEnd) {
+				int ancestor;
+				int distance;
+				if (motherIdx == motherEnd 
+						|| (fatherIdx < fatherEnd && ancestors[fatherIdx] < ancestors[motherIdx])) {
+					ancestor = ancestors[fatherIdx];
+					distance = distances[fatherIdx++];
+				} else if (fatherIdx == fatherEnd || ancestors[motherIdx] < ancestors[fatherIdx]) {
+					ancestor = ancestors[motherIdx];
+					distance = distances[motherIdx++];
+				} else { // shared by both parents
+					ancestor = ancestors[fatherIdx];
+					distance = Math.min(distances[fatherIdx++], distances[motherIdx++]);
+				}
+				if (distance < maxDepth) {
+					ancestors[length] = ancestor;
+					distances[length++] = (byte) (distance + 1);
+				}
+			}
+			// the individual's own id is larger than any of their ancestors'
+			ancestors[length] = i;
+			distances[length++] = 0;
+		}
+		offsets[size] = length;
+		
+		return new AncestryIndex(maxDepth, offsets, 
+				Arrays.copyOf(ancestors, length), Arrays.copyOf(distances, length));
+	}
+	
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+	
+	/**
+	 * Number of generations from the individual up to the ancestor, 0 if they're the same 
+	 * individual, or -1 if the ancestor isn't an ancestor (within maxDepth).
+	 * @param individual
+	 * @param ancestor
+	 * @return
+	 */
+	public int getDistance(int individual, int ancestor) {
+		Preconditions.checkElementIndex(individual, offsets.length - 1, "individual");
+		int idx = Arrays.binarySearch(ancestors, offsets[individual], offsets[individual + 1], ancestor);
+		return idx < 0 ? -1 : distances[idx];
+	}
+	
+	/**
+	 * The most recent common ancestors of the two individuals, i.e. all the common ancestors
+	 * except the ones that are ancestors of other common ancestors.  Sorted by id.
+	 * @param first
+	 * @param second
+	 * @return
+	 */
+	public int[] getMostRecentCommonAncestors(int first, int second) {
+		Preconditions.checkElementIndex(first, offsets.length - 1, "first");
+		Preconditions.checkElementIndex(second, offsets.length - 1, "second");
+		
+		// merge the two sorted runs to find the common ones
+		int[] common = new int[Math.min(offsets[first + 1] - offsets[first], offsets[second + 1] - offsets[second])];
+		int numCommon = 0;
+		int firstIdx = offsets[first];
+		int secondIdx = offsets[second];
+		while (firstIdx < offsets[first + 1] && secondIdx < offsets[second + 1]) {
+			if (ancestors[firstIdx] < ancestors[secondIdx]) {
+				firstIdx++;
+			} else if (ancestors[firstIdx] > ancestors[secondIdx]) {
+				secondIdx++;
+			} else {
+				common[numCommon++] = ancestors[firstIdx];
+				firstIdx++;
+				secondIdx++;
+			}
+		}
+		
+		// only an individual with a larger id can be a descendant, so only look at those
+		int numMostRecent = 0;
+		for (int i = 0; i < numCommon; i++) {
+			boolean mostRecent = true;
+			for (int j = i + 1; j < numCommon && mostRecent; j++) {
+				mostRecent = getDistance(common[j], common[i]) == -1;
+			}
+			if (mostRecent) {
+				common[numMostRecent++] = common[i];
+			}
+		}
+		return Arrays.copyOf(common, numMostRecent);
+	}
+	
+	/**
+	 * The relation of the second individual to the first, e.g. Sibling if they share both parents, 
+	 * in the same form as the relations from BasicRelation.  Returns null if they don't have any
+	 * common ancestors within maxDepth.
+	 * 
+	 * Like the RelatednessCalculator, this only counts the shortest path to each most recent common
+	 * ancestor, so for pedigrees with inbreeding, Pedigree.getKinship() is the more exact answer.
+	 * @param first
+	 * @param second
+	 * @return
+	 */
+	public Relation getRelation(int first, int second) {
+		int[] mostRecent = getMostRecentCommonAncestors(first, second);
+		if (mostRecent.length == 0) {
+			return null;
+		}
+		CommonAncestor[] commonAncestors = new CommonAncestor[mostRecent.length];
+		for (int i = 0; i < mostRecent.length; i++) {
+			commonAncestors[i] = CommonAncestor.valueOf(getDistance(first, mostRecent[i]), 
+					getDistance(second, mostRecent[i]));
+		}
+		return new Relation(commonAncestors).intern();
+	}
+	
+	/**
+	 * Total number of ancestors stored, counting each individual as their own ancestor.
+	 * @return
+	 */
+	public int getNumEntries() {
+		return ancestors.length;
+	}
+	
+	/**
+	 * Approximate memory used by the index, in bytes.
+	 * @return
+	 */
+	public long getSizeInBytes() {
+		return 4L * offsets.length + 4L * ancestors.length + distances.length;
+	}
+}
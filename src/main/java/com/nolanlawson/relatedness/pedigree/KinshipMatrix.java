@@ -0,0 +1,222 @@
+package com.nolanlawson.relatedness.pedigree;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.Closeables;
+import com.google.common.collect.Lists;
+
+/**
+ * Kinship between every pair of individuals in a Pedigree, stored in a TriangularMatrix so the
+ * heap used doesn't depend on the number of pairs.
+ * 
+ * Rows are filled in generation by generation (founders are generation 0, everyone else is one
+ * more than their latest parent).  Each generation only depends on earlier ones, except for pairs 
+ * within the same generation, which only depend on the cells computed just before them.  So 
+ * each generation is done in two steps, and each step is split across the executor's threads:
+ * 
+ * 1. kinship with everyone in earlier generations: k(a, b) = (k(father(a), b) + k(mother(a), b)) / 2
+ * 2. kinship within the generation, using the same formula, plus k(a, a) = (1 + k(father(a), mother(a))) / 2
+ * 
+ * @author nolan
+ *
+ */
+public class KinshipMatrix implements Closeable {
+
+	// rows handed to each task, relative to the number of threads, for load balancing
+	private static final int TASKS_PER_THREAD = 4;
+	
+	private final Pedigree pedigree;
+	private final TriangularMatrix matrix;
+	// position of each individual in generation order, i.e. their row in the matrix
+	private final int[] rows;
+	// individuals in generation order, and where each generation starts
+	private final int[] order;
+	private final int[] generationStarts;
+	
+	private KinshipMatrix(Pedigree pedigree, TriangularMatrix matrix, int[] rows, int[] order, 
+			int[] generationStarts) {
+		this.pedigree = pedigree;
+		this.matrix = matrix;
+		this.rows = rows;
+		this.order = order;
+		this.generationStarts = generationStarts;
+	}
+	
+	/**
+	 * Compute the full matrix for the given pedigree, stored in the given file, using the 
+	 * given executor.  Changes to the pedigree afterwards aren't reflected in the matrix.
+	 * 
+	 * @param pedigree
+	 * @param file
+	 * @param executor
+	 * @param numThreads the number of threads in the executor, used to split up the work
+	 * @return
+	 * @throws IOException
+	 */
+	public static KinshipMatrix compute(Pedigree pedigree, File file, ExecutorService executor, int numThreads) 
+			throws IOException {
+		Preconditions.checkArgument(numThreads > 0, "numThreads must be positive: %s", numThreads);
+		
+		int size = pedigree.size();
+		
+		// ids are already in topological order, so a single pass is enough
+		int[] generations = new int[size];
+		int numGenerations = 0;
+		for (int i = 0; i < size; i++) {
+			int generation = 0;
+			int father = pedigree.getFather(i);
+			int mother = pedigree.getMother(i);
+			if (father != Pedigree.UNKNOWN) {
+				generation = generations[father] + 1;
+			}
+			if (mother != Pedigree.UNKNOWN) {
+				generation = Math.max(generation, generations[mother] + 1);
+			}
+			generations[i] = generation;
+			numGenerations = Math.max(numGenerations, generation + 1);
+		}
+		
+		// counting sort into generation order
+		int[] generationStarts = new int[numGenerations + 1];
+		for (int i = 0; i < size; i++) {
+			generationStarts[generations[i] + 1]++;
+		}
+		for (int i = 0; i < numGenerations; i++) {
+			generationStarts[i + 1] += generationStarts[i];
+		}
+		int[] order = new int[size];
+		int[] rows = new int[size];
+		int[] next = generationStarts.clone();
+		for (int i = 0; i < size; i++) {
+			int row = next[generations[i]]++;
+			order[row] = i;
+			rows[i] = row;
+		}
+		
+		KinshipMatrix result = new KinshipMatrix(pedigree, new TriangularMatrix(file, size), 
+				rows, order, generationStarts);
+		try {
+			for (int i = 0; i < numGenerations; i++) {
+				result.computeGeneration(i, executor, numThreads);
+			}
+		} catch (RuntimeException e) {
+			// nobody else has the matrix to close it
+			Closeables.closeQuietly(result);
+			throw e;
+		}
+		return result;
+	}
+	
+	public int size() {
+		return order.length;
+	}
+	
+	/**
+	 * @see Pedigree#getKinship(int, int)
+	 */
+	public double getKinship(int first, int second) {
+		return matrix.get(rows[first], rows[second]);
+	}
+	
+	/**
+	 * @see Pedigree#getRelatedness(int, int)
+	 */
+	public double getRelatedness(int first, int second) {
+		return 2 * getKinship(first, second);
+	}
+	
+	/**
+	 * Size of the backing file, in bytes.
+	 * @return
+	 */
+	public long getSizeInBytes() {
+		return matrix.getSizeInBytes();
+	}
+	
+	public void close() throws IOException {
+		matrix.close();
+	}
+	
+	private void computeGeneration(int generation, ExecutorService executor, int numThreads) {
+		final int start = generationStarts[generation];
+		int end = generationStarts[generation + 1];
+		int chunkSize = Math.max(1, (end - start + numThreads * TASKS_PER_THREAD - 1) / (numThreads * TASKS_PER_THREAD));
+		
+		// step 1: everyone in earlier generations
+		List<Callable<Void>> tasks = Lists.newArrayList();
+		for (int chunkStart = start; chunkStart < end; chunkStart += chunkSize) {
+			tasks.add(new RowsTask(chunkStart, Math.min(end, chunkStart + chunkSize), start, false));
+		}
+		runAll(executor, tasks);
+		
+		// step 2: everyone in the same generation, up to and including the individual themselves
+		tasks.clear();
+		for (int chunkStart = start; chunkStart < end; chunkStart += chunkSize) {
+			tasks.add(new RowsTask(chunkStart, Math.min(end, chunkStart + chunkSize), start, true));
+		}
+		runAll(executor, tasks);
+	}
+	
+	private double kinship(int parent, int row) {
+		return parent == Pedigree.UNKNOWN ? 0.0 : matrix.get(rows[parent], row);
+	}
+	
+	private static void runAll(ExecutorService executor, List<Callable<Void>> tasks) {
+		try {
+			for (Future<Void> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while computing kinship matrix", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("failed to compute kinship matrix", e.getCause());
+		}
+	}
+	
+	/**
+	 * Fills in the cells for rows [startRow, endRow), for every column in earlier generations 
+	 * (step 1), or for every column from the start of the generation up to the row itself (step 2).
+	 */
+	private class RowsTask implements Callable<Void> {
+		
+		private final int startRow;
+		private final int endRow;
+		private final int generationStart;
+		private final boolean sameGeneration;
+		
+		private RowsTask(int startRow, int endRow, int generationStart, boolean sameGeneration) {
+			this.startRow = startRow;
+			this.endRow = endRow;
+			this.generationStart = generationStart;
+			this.sameGeneration = sameGeneration;
+		}
+		
+		public Void call() {
+			for (int row = startRow; row < endRow; row++) {
+				int individual = order[row];
+				int father = pedigree.getFather(individual);
+				int mother = pedigree.getMother(individual);
+				int firstColumn = sameGeneration ? generationStart : 0;
+				int lastColumn = sameGeneration ? row : generationStart;
+				for (int column = firstColumn; column < lastColumn; column++) {
+					matrix.set(row, column, (kinship(father, column) + kinship(mother, column)) / 2);
+				}
+				if (sameGeneration) {
+					double parentsKinship = (father == Pedigree.UNKNOWN || mother == Pedigree.UNKNOWN) 
+							? 0.0 : matrix.get(rows[father], rows[mother]);
+					matrix.set(row, row, (1.0 + parentsKinship) / 2);
+				}
+			}
+			return null;
+		}
+	}
+}
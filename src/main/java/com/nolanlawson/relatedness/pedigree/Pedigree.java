@@ -0,0 +1,275 @@
+package com.nolanlawson.relatedness.pedigree;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Family tree of individuals linked to their fathers and mothers, for relatedness questions
+ * that can't be expressed as a Relation, e.g. when there's inbreeding somewhere up the tree.
+ * 
+ * Individuals are just int ids, handed out in order by add(), and stored as two parallel int
+ * arrays of parent ids, so each individual costs 8 bytes no matter how big the pedigree gets.
+ * Parents have to be added before their children, which means ids are always in
+ * topological order, i.e. nobody's id is smaller than either of their parents'.
+ * 
+ * @author nolan
+ *
+ */
+public class Pedigree {
+
+	/**
+	 * Parent id used when the parent isn't known, i.e. the individual is a founder.
+	 */
+	public static final int UNKNOWN = -1;
+	
+	private static final int DEFAULT_CAPACITY = 16;
+	// pair of individuals where either one is UNKNOWN, whose kinship is always 0
+	private static final long NO_PAIR = -1L;
+	
+	private int[] fathers;
+	private int[] mothers;
+	private int size;
+	
+	public Pedigree() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	public Pedigree(int expectedSize) {
+		Preconditions.checkArgument(expectedSize >= 0, "negative size: %s", expectedSize);
+		fathers = new int[expectedSize];
+		mothers = new int[expectedSize];
+	}
+	
+	/**
+	 * Add an individual with no known parents.
+	 * @return the new individual's id
+	 */
+	public int addFounder() {
+		return add(UNKNOWN, UNKNOWN);
+	}
+	
+	/**
+	 * Add an individual with the given parents, either of which may be UNKNOWN.
+	 * @param father
+	 * @param mother
+	 * @return the new individual's id
+	 */
+	public int add(int father, int mother) {
+		checkParent(father);
+		checkParent(mother);
+		Preconditions.checkArgument(father == UNKNOWN || father != mother, 
+				"father and mother are the same individual: %s", father);
+		if (size == fathers.length) {
+			int newCapacity = Math.max(DEFAULT_CAPACITY, fathers.length * 2);
+			fathers = Arrays.copyOf(fathers, newCapacity);
+			mothers = Arrays.copyOf(mothers, newCapacity);
+		}
+		fathers[size] = father;
+		mothers[size] = mother;
+		return size++;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public int getFather(int individual) {
+		checkIndividual(individual);
+		return fathers[individual];
+	}
+	
+	public int getMother(int individual) {
+		checkIndividual(individual);
+		return mothers[individual];
+	}
+	
+	/**
+	 * Wright's coefficient of kinship, i.e. the probability that a gene picked at random from
+	 * each of the two individuals is identical by descent.
+	 * @param first
+	 * @param second
+	 * @return
+	 */
+	public double getKinship(int first, int second) {
+		checkIndividual(first);
+		checkIndividual(second);
+		return kinship(first, second);
+	}
+	
+	/**
+	 * The coefficient of relationship, i.e. the same number as 
+	 * RelatednessCalculator.calculate(relation).getCoefficient() for the Relation between
+	 * the two individuals.  Works out to twice the kinship, which also accounts for any inbreeding.
+	 * @param first
+	 * @param second
+	 * @return
+	 */
+	public double getRelatedness(int first, int second) {
+		return 2 * getKinship(first, second);
+	}
+	
+	/**
+	 * Coefficient of inbreeding, i.e. the kinship between the individual's parents.
+	 * @param individual
+	 * @return
+	 */
+	public double getInbreeding(int individual) {
+		checkIndividual(individual);
+		return kinship(fathers[individual], mothers[individual]);
+	}
+	
+	/**
+	 * The usual recursive definition, which works because the larger id can never be an 
+	 * ancestor of the smaller one:
+	 * 
+	 * k(a, a) = (1 + k(father(a), mother(a))) / 2
+	 * k(a, b) = (k(father(a), b) + k(mother(a), b)) / 2, where a is the younger one
+	 * 
+	 * It's evaluated with an explicit stack of pairs instead of actual recursion, because the 
+	 * depth grows with the number of generations.  Memoized per query, since the same pairs come 
+	 * up over and over again in trees with lots of shared ancestors.
+	 */
+	private double kinship(int first, int second) {
+		long root = pair(first, second);
+		if (root == NO_PAIR) {
+			return 0.0;
+		}
+		KinshipMemo memo = new KinshipMemo();
+		long[] stack = new long[DEFAULT_CAPACITY];
+		int stackSize = 0;
+		stack[stackSize++] = root;
+		while (stackSize > 0) {
+			long key = stack[stackSize - 1];
+			if (!Double.isNaN(memo.get(key))) {
+				stackSize--; // pushed more than once, and already done
+				continue;
+			}
+			int younger = (int) (key >>> 32);
+			int older = (int) key;
+			long firstParentPair;
+			long secondParentPair;
+			if (younger == older) {
+				firstParentPair = pair(fathers[younger], mothers[younger]);
+				secondParentPair = NO_PAIR;
+			} else {
+				firstParentPair = pair(fathers[younger], older);
+				secondParentPair = pair(mothers[younger], older);
+			}
+			double firstParentKinship = lookup(firstParentPair, memo);
+			double secondParentKinship = lookup(secondParentPair, memo);
+			if (Double.isNaN(firstParentKinship) || Double.isNaN(secondParentKinship)) {
+				// do the parents' pairs first, then come back to this one
+				if (stackSize + 2 > stack.length) {
+					stack = Arrays.copyOf(stack, stack.length * 2);
+				}
+				if (Double.isNaN(firstParentKinship)) {
+					stack[stackSize++] = firstParentPair;
+				}
+				if (Double.isNaN(secondParentKinship)) {
+					stack[stackSize++] = secondParentPair;
+				}
+				continue;
+			}
+			memo.put(key, younger == older 
+					? (1.0 + firstParentKinship) / 2 
+					: (firstParentKinship + secondParentKinship) / 2);
+			stackSize--;
+		}
+		return memo.get(root);
+	}
+	
+	/**
+	 * Both ids packed into one long, younger first, or NO_PAIR if either one is UNKNOWN.
+	 */
+	private static long pair(int first, int second) {
+		if (first == UNKNOWN || second == UNKNOWN) {
+			return NO_PAIR;
+		}
+		return (((long) Math.max(first, second)) << 32) | Math.min(first, second);
+	}
+	
+	private static double lookup(long pair, KinshipMemo memo) {
+		return pair == NO_PAIR ? 0.0 : memo.get(pair);
+	}
+	
+	private void checkParent(int parent) {
+		Preconditions.checkArgument(parent == UNKNOWN || (parent >= 0 && parent < size), 
+				"parent must be UNKNOWN or an already-added individual: %s", parent);
+	}
+	
+	private void checkIndividual(int individual) {
+		Preconditions.checkElementIndex(individual, size, "individual");
+	}
+	
+	/**
+	 * Map of pairs to their kinship, with open addressing and linear probing, so that each
+	 * entry is just a long and a double instead of a boxed Long, a boxed Double and a HashMap entry.
+	 * It only lives as long as one query, so it only ever holds the pairs that query reaches.
+	 */
+	private static class KinshipMemo {
+		
+		// pairs are never negative, since both ids are at least 0
+		private static final long EMPTY = -1L;
+		
+		private long[] keys = newKeys(DEFAULT_CAPACITY);
+		private double[] values = new double[DEFAULT_CAPACITY];
+		private int size;
+		
+		/**
+		 * The kinship for the given pair, or NaN if it hasn't been put yet.
+		 */
+		public double get(long key) {
+			int slot = slot(keys, key);
+			return keys[slot] == key ? values[slot] : Double.NaN;
+		}
+		
+		public void put(long key, double value) {
+			int slot = slot(keys, key);
+			if (keys[slot] != key) {
+				if (2 * (size + 1) > keys.length) {
+					// keep it at most half full, so probes stay short
+					grow();
+					slot = slot(keys, key);
+				}
+				keys[slot] = key;
+				size++;
+			}
+			values[slot] = value;
+		}
+		
+		private void grow() {
+			long[] oldKeys = keys;
+			double[] oldValues = values;
+			keys = newKeys(oldKeys.length * 2);
+			values = new double[oldKeys.length * 2];
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != EMPTY) {
+					int slot = slot(keys, oldKeys[i]);
+					keys[slot] = oldKeys[i];
+					values[slot] = oldValues[i];
+				}
+			}
+		}
+		
+		/**
+		 * Slot that holds the key, or the empty slot where it would go.
+		 */
+		private static int slot(long[] keys, long key) {
+			int mask = keys.length - 1;
+			// spread the bits, since the low bits of nearby pairs are nearly the same
+			long hash = key * 0x9E3779B97F4A7C15L;
+			int slot = (int) (hash >>> 32) & mask;
+			while (keys[slot] != EMPTY && keys[slot] != key) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+		
+		private static long[] newKeys(int capacity) {
+			long[] keys = new long[capacity];
+			Arrays.fill(keys, EMPTY);
+			return keys;
+		}
+	}
+}
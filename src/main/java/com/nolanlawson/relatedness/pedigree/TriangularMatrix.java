@@ -0,0 +1,129 @@
+package com.nolanlawson.relatedness.pedigree;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.Closeables;
+
+/**
+ * Symmetric matrix of doubles, stored off-heap in a memory-mapped file so that it can be
+ * much bigger than the Java heap.  Only the lower triangle is stored, row by row, so an 
+ * n x n matrix takes n(n+1)/2 doubles.
+ * 
+ * A single mapping can't be bigger than 2GB, so the file is mapped as several fixed-size 
+ * segments.  get() and set() only use absolute positions, so different threads can safely
+ * write different cells at the same time.
+ * 
+ * @author nolan
+ *
+ */
+public class TriangularMatrix implements Closeable {
+
+	private static final int BYTES_PER_DOUBLE = 8;
+	// 2^27 doubles, i.e. 1GB per segment
+	private static final int SEGMENT_SHIFT = 27;
+	private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+	
+	private final int size;
+	private final RandomAccessFile file;
+	private final MappedByteBuffer[] segments;
+	
+	/**
+	 * Create a new size x size matrix backed by the given file, which is overwritten.
+	 * @param file
+	 * @param size
+	 * @throws IOException
+	 */
+	public TriangularMatrix(File file, int size) throws IOException {
+		Preconditions.checkArgument(size >= 0, "negative size: %s", size);
+		this.size = size;
+		this.file = new RandomAccessFile(file, "rw");
+		
+		long numCells = numCells(size);
+		int numSegments = (int) ((numCells + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+		segments = new MappedByteBuffer[numSegments];
+		boolean mapped = false;
+		try {
+			this.file.setLength(numCells * BYTES_PER_DOUBLE);
+			FileChannel channel = this.file.getChannel();
+			for (int i = 0; i < numSegments; i++) {
+				long start = ((long) i) << SEGMENT_SHIFT;
+				long length = Math.min(numCells - start, 1L << SEGMENT_SHIFT);
+				segments[i] = channel.map(MapMode.READ_WRITE, start * BYTES_PER_DOUBLE, length * BYTES_PER_DOUBLE);
+			}
+			mapped = true;
+		} finally {
+			if (!mapped) {
+				// e.g. out of disk space or address space
+				Closeables.closeQuietly(this.file);
+			}
+		}
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Size of the backing file, in bytes.
+	 * @return
+	 */
+	public long getSizeInBytes() {
+		return numCells(size) * BYTES_PER_DOUBLE;
+	}
+	
+	public double get(int row, int column) {
+		long cell = cell(row, column);
+		return segments[(int) (cell >>> SEGMENT_SHIFT)].getDouble((int) (cell & SEGMENT_MASK) * BYTES_PER_DOUBLE);
+	}
+	
+	/**
+	 * Set both (row, column) and (column, row) to the given value.
+	 * @param row
+	 * @param column
+	 * @param value
+	 */
+	public void set(int row, int column, double value) {
+		long cell = cell(row, column);
+		segments[(int) (cell >>> SEGMENT_SHIFT)].putDouble((int) (cell & SEGMENT_MASK) * BYTES_PER_DOUBLE, value);
+	}
+	
+	/**
+	 * Write any changes out to the backing file.
+	 */
+	public void flush() {
+		for (MappedByteBuffer segment : segments) {
+			segment.force();
+		}
+	}
+	
+	/**
+	 * Flush and close the backing file.  The mapping itself is only released once it's
+	 * garbage collected.
+	 */
+	public void close() throws IOException {
+		flush();
+		file.close();
+	}
+	
+	private long cell(int row, int column) {
+		Preconditions.checkElementIndex(row, size, "row");
+		Preconditions.checkElementIndex(column, size, "column");
+		if (column > row) {
+			int temp = row;
+			row = column;
+			column = temp;
+		}
+		return numCells(row) + column;
+	}
+	
+	private static long numCells(int numRows) {
+		return ((long) numRows) * (numRows + 1) / 2;
+	}
+}
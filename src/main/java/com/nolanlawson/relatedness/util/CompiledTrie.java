@@ -0,0 +1,773 @@
+package com.nolanlawson.relatedness.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.nolanlawson.relatedness.util.Trie.TrieLeaf;
+
+/**
+ * Read-only map of strings to float weights, stored as a minimized acyclic automaton (a DAWG), 
+ * laid out as flat arrays in a single ByteBuffer, so that it can be written to a file once and then 
+ * memory-mapped by any number of processes.  Loading it doesn't create any objects per node, and 
+ * the pages are shared through the OS's page cache.
+ * 
+ * Unlike a Trie, nodes with identical suffixes are shared, so all the "great-" and "half-" 
+ * variations of e.g. "grandma" only need one copy of "grandma".  Since a node can be reached by 
+ * many keys, values aren't stored in the nodes.  Instead, each node stores how many keys can be 
+ * reached from it, which gives every key a rank (its position A-Z), and the values are stored by 
+ * rank.  The keys under any prefix then have a contiguous range of ranks, and a segment tree over
+ * the values finds the best ones in any range.
+ * 
+ * Each key can also have an int tag, for callers that need to store something extra with it,
+ * and the whole trie has a fingerprint, which map() checks so that callers can tell whether a file
+ * was built from the same data they would build it from now.
+ * 
+ * Supports the same queries as a Trie compiled with Ordering.natural(), i.e. getBest() returns
+ * the highest values first, with ties broken A-Z.  For callers that look at a lot of keys and only
+ * keep a few, there's also a primitive API, where each key is identified by an int entry (its rank).
+ * Walking the entries with getBestEntries() doesn't box any values or build any keys; a key is only
+ * built as a String when appendKey() or getKey() is called.
+ * 
+ * The layout is (all big-endian):
+ * 
+ * header:    magic, version, numNodes, numEdges, numKeys, treeSize (ints), fingerprint (long)
+ * nodes:     edgeStarts (int[numNodes + 1]), counts (int[numNodes]), finals (byte[numNodes])
+ * keys:      values (float[numKeys]), tags (int[numKeys]), tree (int[2 * treeSize])
+ * edges:     labels (char[numEdges]), targets (int[numEdges])
+ * 
+ * Node 0 is the root, and the edges of node i are [edgeStarts[i], edgeStarts[i + 1]), sorted 
+ * by label.  Keys without a tag have a tag of NO_TAG.
+ * 
+ * @author nolan
+ *
+ */
+public class CompiledTrie {
+
+    public static final int NO_TAG = -1;
+    public static final int NO_ENTRY = -1;
+
+    private static final int MAGIC = 0x52435452; // "RCTR"
+    private static final int VERSION = 4;
+    private static final int HEADER_SIZE = 6 * 4 + 8;
+    private static final int ROOT = 0;
+
+    private final ByteBuffer buffer;
+    private final int numNodes;
+    private final int numEdges;
+    private final int numKeys;
+    private final int treeSize;
+    private final long fingerprint;
+
+    // offsets of each section within the buffer
+    private final int edgeStartsOffset;
+    private final int countsOffset;
+    private final int finalsOffset;
+    private final int valuesOffset;
+    private final int tagsOffset;
+    private final int treeOffset;
+    private final int labelsOffset;
+    private final int targetsOffset;
+
+    private CompiledTrie(ByteBuffer buffer) {
+	this.buffer = buffer;
+	Preconditions.checkArgument(buffer.capacity() >= HEADER_SIZE && buffer.getInt(0) == MAGIC, 
+		"not a compiled trie");
+	Preconditions.checkArgument(buffer.getInt(4) == VERSION, "unsupported version: %s", buffer.getInt(4));
+	numNodes = buffer.getInt(8);
+	numEdges = buffer.getInt(12);
+	numKeys = buffer.getInt(16);
+	treeSize = buffer.getInt(20);
+	fingerprint = buffer.getLong(24);
+
+	edgeStartsOffset = HEADER_SIZE;
+	countsOffset = edgeStartsOffset + 4 * (numNodes + 1);
+	finalsOffset = countsOffset + 4 * numNodes;
+	valuesOffset = finalsOffset + numNodes;
+	tagsOffset = valuesOffset + 4 * numKeys;
+	treeOffset = tagsOffset + 4 * numKeys;
+	labelsOffset = treeOffset + 4 * 2 * treeSize;
+	targetsOffset = labelsOffset + 2 * numEdges;
+	Preconditions.checkArgument(buffer.capacity() == targetsOffset + 4 * numEdges, "truncated compiled trie");
+    }
+
+    /**
+     * Build a new trie in memory.
+     * 
+     * @param values
+     *            the value of each key
+     * @param tags
+     *            optional tags for some or all of the keys
+     * @param fingerprint
+     *            identifies the data the trie was built from, see map()
+     * @return
+     */
+    public static CompiledTrie build(Map<String, Double> values, Map<String, Integer> tags, 
+	    long fingerprint) {
+	SortedMap<String, Double> sortedValues = Maps.newTreeMap();
+	sortedValues.putAll(values);
+
+	// build a temporary trie of objects first, then merge identical subtrees bottom-up
+	BuildNode root = new BuildNode();
+	for (String key : sortedValues.keySet()) {
+	    BuildNode node = root;
+	    for (int i = 0; i < key.length(); i++) {
+		BuildNode child = node.children.get(key.charAt(i));
+		if (child == null) {
+		    child = new BuildNode();
+		    node.children.put(key.charAt(i), child);
+		}
+		node = child;
+	    }
+	    node.isFinal = true;
+	}
+	root = minimize(root, Maps.<String, BuildNode> newHashMap());
+
+	// number the remaining nodes depth-first, so that prefix walks go forward through the arrays
+	List<BuildNode> nodes = Lists.newArrayList();
+	number(root, nodes);
+	int numEdges = 0;
+	for (BuildNode node : nodes) {
+	    numEdges += node.children.size();
+	}
+	int treeSize = Integer.highestOneBit(Math.max(1, sortedValues.size() - 1)) << 1;
+
+	ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + (4 + 4 + 1) * nodes.size() + 4
+		+ (4 + 4) * sortedValues.size() + 4 * 2 * treeSize + (2 + 4) * numEdges);
+	buffer.putInt(MAGIC).putInt(VERSION).putInt(nodes.size()).putInt(numEdges)
+		.putInt(sortedValues.size()).putInt(treeSize).putLong(fingerprint);
+	int edgeStart = 0;
+	for (BuildNode node : nodes) {
+	    buffer.putInt(edgeStart);
+	    edgeStart += node.children.size();
+	}
+	buffer.putInt(edgeStart);
+	for (BuildNode node : nodes) {
+	    buffer.putInt(node.count);
+	}
+	for (BuildNode node : nodes) {
+	    buffer.put((byte) (node.isFinal ? 1 : 0));
+	}
+	// ranks are A-Z, so the values are just in sorted order
+	float[] rankedValues = new float[sortedValues.size()];
+	int rank = 0;
+	for (Double value : sortedValues.values()) {
+	    rankedValues[rank] = value.floatValue();
+	    buffer.putFloat(rankedValues[rank++]);
+	}
+	for (String key : sortedValues.keySet()) {
+	    Integer tag = tags.get(key);
+	    buffer.putInt(tag == null ? NO_TAG : tag);
+	}
+	for (int index : buildTree(rankedValues, treeSize)) {
+	    buffer.putInt(index);
+	}
+	for (BuildNode node : nodes) {
+	    for (Character label : node.children.keySet()) {
+		buffer.putChar(label);
+	    }
+	}
+	for (BuildNode node : nodes) {
+	    for (BuildNode child : node.children.values()) {
+		buffer.putInt(child.id);
+	    }
+	}
+	buffer.flip();
+	return new CompiledTrie(buffer);
+    }
+
+    /**
+     * Wrap a buffer that contains a compiled trie, e.g. one written by writeTo().
+     * 
+     * @param buffer
+     * @return
+     */
+    public static CompiledTrie wrap(ByteBuffer buffer) {
+	return new CompiledTrie(buffer.slice());
+    }
+
+    /**
+     * Memory-map a file written by writeTo().  Fails if the file isn't a compiled trie of this 
+     * version, or if it was built with a different fingerprint, i.e. from different data.
+     * 
+     * @param file
+     * @param fingerprint
+     * @return
+     * @throws IOException
+     */
+    public static CompiledTrie map(File file, long fingerprint) throws IOException {
+	CompiledTrie result;
+	FileInputStream inputStream = new FileInputStream(file);
+	try {
+	    FileChannel channel = inputStream.getChannel();
+	    result = new CompiledTrie(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+	} catch (IllegalArgumentException e) {
+	    throw new IOException("can't load " + file, e);
+	} finally {
+	    inputStream.close(); // the mapping stays valid
+	}
+	if (result.fingerprint != fingerprint) {
+	    throw new IOException(file + " was built from different data, and needs to be rebuilt");
+	}
+	return result;
+    }
+
+    /**
+     * Write this trie to a file, to be loaded later with map().
+     * 
+     * @param file
+     * @throws IOException
+     */
+    public void writeTo(File file) throws IOException {
+	FileOutputStream outputStream = new FileOutputStream(file);
+	try {
+	    FileChannel channel = outputStream.getChannel();
+	    ByteBuffer duplicate = buffer.duplicate();
+	    duplicate.clear();
+	    while (duplicate.hasRemaining()) {
+		channel.write(duplicate);
+	    }
+	} finally {
+	    outputStream.close();
+	}
+    }
+
+    /**
+     * Number of keys.
+     * 
+     * @return
+     */
+    public int size() {
+	return numKeys;
+    }
+
+    public long getFingerprint() {
+	return fingerprint;
+    }
+
+    public int getNumNodes() {
+	return numNodes;
+    }
+
+    /**
+     * Size of the flat representation, in bytes.
+     * 
+     * @return
+     */
+    public int getSizeInBytes() {
+	return buffer.capacity();
+    }
+
+    /**
+     * Get the value for exactly this key, or null if there is none.
+     * 
+     * @param key
+     * @return
+     */
+    public Double get(CharSequence key) {
+	int entry = getEntry(key);
+	return entry == NO_ENTRY ? null : Double.valueOf(value(entry));
+    }
+
+    /**
+     * Get the tag for exactly this key, or NO_TAG if there is none.
+     * 
+     * @param key
+     * @return
+     */
+    public int getTag(CharSequence key) {
+	int entry = getEntry(key);
+	return entry == NO_ENTRY ? NO_TAG : getTag(entry);
+    }
+
+    /**
+     * Get the entry for exactly this key, or NO_ENTRY if there is none.
+     * 
+     * @param key
+     * @return
+     */
+    public int getEntry(CharSequence key) {
+	int[] nodeAndRank = findPrefix(key);
+	return nodeAndRank != null && isFinal(nodeAndRank[0]) ? nodeAndRank[1] : NO_ENTRY;
+    }
+
+    public float getWeight(int entry) {
+	return value(entry);
+    }
+
+    public int getTag(int entry) {
+	return buffer.getInt(tagsOffset + 4 * entry);
+    }
+
+    /**
+     * Append the key of this entry to the given builder.
+     * 
+     * @param entry
+     * @param key
+     */
+    public void appendKey(int entry, StringBuilder key) {
+	appendKey(ROOT, entry, key);
+    }
+
+    public String getKey(int entry) {
+	StringBuilder key = new StringBuilder();
+	appendKey(entry, key);
+	return key.toString();
+    }
+
+    /**
+     * Find all possible leaf nodes from this prefix, A-Z.
+     * 
+     * @param prefix
+     * @return
+     */
+    public List<TrieLeaf<Double>> getAll(CharSequence prefix) {
+	int[] nodeAndRank = findPrefix(prefix);
+	if (nodeAndRank == null) {
+	    return Collections.emptyList();
+	}
+	List<TrieLeaf<Double>> result = Lists.newArrayList();
+	getAllRecursive(nodeAndRank[0], nodeAndRank[1], result, new StringBuilder(prefix));
+	return result;
+    }
+
+    private int getAllRecursive(int node, int rank, List<TrieLeaf<Double>> result, StringBuilder key) {
+	if (isFinal(node)) {
+	    result.add(new TrieLeaf<Double>(key.toString(), (double) value(rank++)));
+	}
+	int length = key.length();
+	for (int edge = edgeStart(node); edge < edgeStart(node + 1); edge++) {
+	    key.append(label(edge));
+	    rank = getAllRecursive(target(edge), rank, result, key);
+	    key.setLength(length);
+	}
+	return rank;
+    }
+
+    /**
+     * Find the best leaf nodes from this prefix, from highest to lowest value, with ties broken
+     * by the key A-Z.
+     * 
+     * @see Trie#getBest(CharSequence)
+     * @param prefix
+     * @return
+     */
+    public Iterator<TrieLeaf<Double>> getBest(CharSequence prefix) {
+	final EntryIterator entries = getBestEntries(prefix);
+	return new AbstractIterator<TrieLeaf<Double>>() {
+
+	    @Override
+	    protected TrieLeaf<Double> computeNext() {
+		if (!entries.hasNext()) {
+		    return endOfData();
+		}
+		int entry = entries.next();
+		return new TrieLeaf<Double>(getKey(entry), (double) value(entry));
+	    }
+	};
+    }
+
+    /**
+     * Same as getBest(), but returns the entries instead of building a leaf for each one.
+     * 
+     * @param prefix
+     * @return
+     */
+    public EntryIterator getBestEntries(CharSequence prefix) {
+	EntryIterator result = new EntryIterator(1.0F, false);
+	int[] nodeAndRank = findPrefix(prefix);
+	if (nodeAndRank != null) {
+	    result.addRange(nodeAndRank[1], nodeAndRank[1] + count(nodeAndRank[0]), 0);
+	}
+	return result;
+    }
+
+    /**
+     * Same as getBestEntries(), but for a prefix that might have typos in it, e.g. "cusin" or
+     * "neice".  Finds every key that starts with something within maxEdits edits (insertions, 
+     * deletions, substitutions or swaps of two adjacent characters) of the prefix, and ranks them 
+     * by their weight times editDiscount for each edit, so e.g. with a discount of 0.25, one edit
+     * is worth a quarter of the weight.  EntryIterator.getEdits() says how many edits were needed.
+     * 
+     * The trie is walked depth-first, keeping the edit distances of the path so far (like a 
+     * Levenshtein automaton), and a branch is dropped as soon as it can't get within maxEdits.
+     * The walk visits at most maxVisits nodes, which puts a bound on how long it can take; past 
+     * that, it stops and only returns what it has found so far.  (A node count is used rather 
+     * than a clock so that the same input always gets the same results.)
+     * 
+     * @param prefix
+     * @param maxEdits
+     * @param editDiscount
+     * @param maxVisits
+     * @return
+     */
+    public EntryIterator getFuzzyEntries(CharSequence prefix, int maxEdits, float editDiscount, 
+	    int maxVisits) {
+	EntryIterator result = new EntryIterator(editDiscount, true);
+	new FuzzyWalk(prefix, maxEdits, result, maxVisits).walk(ROOT, 0, 0, maxEdits + 1);
+	return result;
+    }
+
+    /**
+     * Same as getBest(), but just returns the top limit leaves as a list.
+     * 
+     * @param prefix
+     * @param limit
+     * @return
+     */
+    public List<TrieLeaf<Double>> getTop(CharSequence prefix, int limit) {
+	return Lists.newArrayList(Iterators.limit(getBest(prefix), limit));
+    }
+
+    /**
+     * Walk the prefix, returning the node it ends at and the rank of the first key under that node,
+     * or null if there's no such prefix.
+     */
+    private int[] findPrefix(CharSequence prefix) {
+	int node = ROOT;
+	int rank = 0;
+	for (int i = 0; i < prefix.length(); i++) {
+	    if (isFinal(node)) {
+		rank++; // the key ending here comes before any key that continues on
+	    }
+	    char ch = prefix.charAt(i);
+	    int edge = edgeStart(node);
+	    int end = edgeStart(node + 1);
+	    for (; edge < end && label(edge) < ch; edge++) {
+		rank += count(target(edge));
+	    }
+	    if (edge == end || label(edge) != ch) {
+		return null;
+	    }
+	    node = target(edge);
+	}
+	return new int[] { node, rank };
+    }
+
+    /**
+     * Walk back down from the node to find the key with the given rank (relative to the node).
+     */
+    private void appendKey(int node, int relativeRank, StringBuilder key) {
+	while (true) {
+	    if (isFinal(node)) {
+		if (relativeRank == 0) {
+		    return;
+		}
+		relativeRank--;
+	    }
+	    int edge = edgeStart(node);
+	    while (relativeRank >= count(target(edge))) {
+		relativeRank -= count(target(edge));
+		edge++;
+	    }
+	    key.append(label(edge));
+	    node = target(edge);
+	}
+    }
+
+    /**
+     * Rank with the best value in [start, end), with ties going to the lowest rank.
+     */
+    private int bestInRange(int start, int end) {
+	int best = NO_ENTRY;
+	for (int low = start + treeSize, high = end + treeSize; low < high; low >>>= 1, high >>>= 1) {
+	    if ((low & 1) == 1) {
+		best = better(best, tree(low++));
+	    }
+	    if ((high & 1) == 1) {
+		best = better(best, tree(--high));
+	    }
+	}
+	return best;
+    }
+
+    private int better(int rank1, int rank2) {
+	if (rank1 == NO_ENTRY) {
+	    return rank2;
+	} else if (rank2 == NO_ENTRY) {
+	    return rank1;
+	}
+	int comparison = Float.compare(value(rank1), value(rank2));
+	if (comparison != 0) {
+	    return comparison > 0 ? rank1 : rank2;
+	}
+	return Math.min(rank1, rank2);
+    }
+
+    private int edgeStart(int node) {
+	return buffer.getInt(edgeStartsOffset + 4 * node);
+    }
+
+    private int count(int node) {
+	return buffer.getInt(countsOffset + 4 * node);
+    }
+
+    private boolean isFinal(int node) {
+	return buffer.get(finalsOffset + node) != 0;
+    }
+
+    private float value(int rank) {
+	return buffer.getFloat(valuesOffset + 4 * rank);
+    }
+
+    private int tree(int index) {
+	return buffer.getInt(treeOffset + 4 * index);
+    }
+
+    private char label(int edge) {
+	return buffer.getChar(labelsOffset + 2 * edge);
+    }
+
+    private int target(int edge) {
+	return buffer.getInt(targetsOffset + 4 * edge);
+    }
+
+    /**
+     * Replace every subtree with the first identical one seen, and fill in the counts.
+     */
+    private static BuildNode minimize(BuildNode node, Map<String, BuildNode> register) {
+	StringBuilder signature = new StringBuilder(node.isFinal ? "1" : "0");
+	node.count = node.isFinal ? 1 : 0;
+	for (Entry<Character, BuildNode> entry : node.children.entrySet()) {
+	    BuildNode child = minimize(entry.getValue(), register);
+	    entry.setValue(child);
+	    node.count += child.count;
+	    signature.append(entry.getKey()).append(child.signatureId).append(',');
+	}
+	BuildNode existing = register.get(signature.toString());
+	if (existing != null) {
+	    return existing;
+	}
+	node.signatureId = register.size();
+	register.put(signature.toString(), node);
+	return node;
+    }
+
+    private static void number(BuildNode node, List<BuildNode> nodes) {
+	node.id = nodes.size();
+	nodes.add(node);
+	for (BuildNode child : node.children.values()) {
+	    if (child.id == NO_ENTRY) {
+		number(child, nodes);
+	    }
+	}
+    }
+
+    /**
+     * Segment tree where the leaves (treeSize + rank) are the ranks themselves and each parent 
+     * holds the better of its two children.
+     */
+    private static int[] buildTree(float[] values, int treeSize) {
+	int[] tree = new int[2 * treeSize];
+	for (int i = 0; i < treeSize; i++) {
+	    tree[treeSize + i] = i < values.length ? i : NO_ENTRY;
+	}
+	for (int i = treeSize - 1; i > 0; i--) {
+	    int left = tree[2 * i];
+	    int right = tree[2 * i + 1];
+	    tree[i] = right == NO_ENTRY || (left != NO_ENTRY && values[left] >= values[right]) ? left : right;
+	}
+	return tree;
+    }
+
+    private static class BuildNode {
+
+	int id = NO_ENTRY;
+	int signatureId;
+	boolean isFinal;
+	int count;
+	SortedMap<Character, BuildNode> children = Maps.newTreeMap();
+    }
+
+    /**
+     * One walk through the trie for getFuzzyEntries().  rows[depth][i] is the number of edits
+     * between the first i characters of the input and the path to the current node.
+     */
+    private class FuzzyWalk {
+
+	private CharSequence input;
+	private int maxEdits;
+	private EntryIterator result;
+	private int visitsLeft;
+	private int[][] rows;
+	private char[] path;
+
+	FuzzyWalk(CharSequence input, int maxEdits, EntryIterator result, int maxVisits) {
+	    this.input = input;
+	    this.maxEdits = maxEdits;
+	    this.result = result;
+	    this.visitsLeft = maxVisits;
+	    // no path more than maxEdits longer than the input can be close enough
+	    rows = new int[input.length() + maxEdits + 1][input.length() + 1];
+	    path = new char[rows.length];
+	    for (int i = 0; i <= input.length(); i++) {
+		rows[0][i] = i;
+	    }
+	}
+
+	/**
+	 * Returns false if it ran out of visits.  pathEdits is the fewest edits for any node on the 
+	 * path so far, since there's no point adding the keys under this node again unless they're 
+	 * closer.
+	 */
+	boolean walk(int node, int rank, int depth, int pathEdits) {
+	    if (visitsLeft-- == 0) {
+		return false;
+	    }
+	    int edits = rows[depth][input.length()];
+	    if (edits < pathEdits) {
+		result.addRange(rank, rank + count(node), edits);
+		pathEdits = edits;
+	    }
+	    if (depth + 1 == rows.length) {
+		return true;
+	    }
+	    int childRank = isFinal(node) ? rank + 1 : rank;
+	    for (int edge = edgeStart(node); edge < edgeStart(node + 1); edge++) {
+		int child = target(edge);
+		path[depth] = label(edge);
+		// edits can only go up from here, so prune if they're already too high
+		if (step(depth) < pathEdits && !walk(child, childRank, depth + 1, pathEdits)) {
+		    return false;
+		}
+		childRank += count(child);
+	    }
+	    return true;
+	}
+
+	/**
+	 * Fill in the row for depth + 1, returning its minimum.
+	 */
+	private int step(int depth) {
+	    int[] previous = rows[depth];
+	    int[] next = rows[depth + 1];
+	    char ch = path[depth];
+	    next[0] = depth + 1;
+	    int min = next[0];
+	    for (int i = 1; i <= input.length(); i++) {
+		int edits = Math.min(Math.min(previous[i], next[i - 1]) + 1,
+			previous[i - 1] + (input.charAt(i - 1) == ch ? 0 : 1));
+		if (depth > 0 && i > 1 && input.charAt(i - 1) == path[depth - 1] && input.charAt(i - 2) == ch) {
+		    edits = Math.min(edits, rows[depth - 1][i - 2] + 1); // swapped characters
+		}
+		next[i] = edits;
+		min = Math.min(min, edits);
+	    }
+	    return min;
+	}
+    }
+
+    /**
+     * A range of ranks that haven't been returned yet, sorted by the best score in the range.
+     * Since the ranks are A-Z, ties are broken by the rank.
+     */
+    private class Candidate implements Comparable<Candidate> {
+
+	int start;
+	int end;
+	int edits;
+	int best;
+	float discount;
+	float score;
+
+	Candidate(int start, int end, int edits, float discount) {
+	    this.start = start;
+	    this.end = end;
+	    this.edits = edits;
+	    this.discount = discount;
+	    this.best = bestInRange(start, end);
+	    this.score = edits == 0 ? value(best) : value(best) * discount;
+	}
+
+	public int compareTo(Candidate other) {
+	    return ComparisonChain.start()
+		    .compare(other.score, score)
+		    .compare(best, other.best)
+		    .result();
+	}
+    }
+
+    /**
+     * Iterates through entries from the highest weight to the lowest, like an Iterator<Integer>
+     * without the boxing.
+     */
+    public class EntryIterator {
+
+	private PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>();
+	private float editDiscount;
+	// fuzzy ranges can overlap, so those need to remember what they've returned
+	private BitSet returned;
+	private int nextEntry = NO_ENTRY;
+	private int nextEdits;
+	private int edits;
+
+	private EntryIterator(float editDiscount, boolean overlapping) {
+	    this.editDiscount = editDiscount;
+	    this.returned = overlapping ? new BitSet(numKeys) : null;
+	}
+
+	private void addRange(int startRank, int endRank, int edits) {
+	    if (startRank < endRank) {
+		queue.add(new Candidate(startRank, endRank, edits, (float) Math.pow(editDiscount, edits)));
+	    }
+	}
+
+	public boolean hasNext() {
+	    while (nextEntry == NO_ENTRY && !queue.isEmpty()) {
+		Candidate candidate = queue.poll();
+		// split the range around the best one
+		if (candidate.start < candidate.best) {
+		    queue.add(new Candidate(candidate.start, candidate.best, candidate.edits, candidate.discount));
+		}
+		if (candidate.best + 1 < candidate.end) {
+		    queue.add(new Candidate(candidate.best + 1, candidate.end, candidate.edits, candidate.discount));
+		}
+		if (returned == null || !returned.get(candidate.best)) {
+		    if (returned != null) {
+			returned.set(candidate.best);
+		    }
+		    nextEntry = candidate.best;
+		    nextEdits = candidate.edits;
+		}
+	    }
+	    return nextEntry != NO_ENTRY;
+	}
+
+	public int next() {
+	    if (!hasNext()) {
+		throw new NoSuchElementException();
+	    }
+	    int entry = nextEntry;
+	    edits = nextEdits;
+	    nextEntry = NO_ENTRY;
+	    return entry;
+	}
+
+	/**
+	 * Number of edits needed to match the entry last returned by next(), which is always 0 
+	 * outside of getFuzzyEntries().
+	 */
+	public int getEdits() {
+	    return edits;
+	}
+    }
+}
@@ -0,0 +1,277 @@
+package com.nolanlawson.relatedness.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Deterministic finite automaton that recognizes a fixed set of phrases,
+ * each mapped to a value.  Built once via subset construction, then stored
+ * as flat primitive arrays, so stepping through it never backtracks and
+ * never allocates.
+ *
+ * Matching is case-insensitive.  If flexibleSpaces is set, every space in a
+ * phrase matches zero or one space or hyphen, e.g. "half sister" also matches
+ * "half-sister" and "halfsister".
+ *
+ * @author nolan
+ *
+ * @param <T>
+ */
+public class DeterministicAutomaton<T> {
+
+    /**
+     * Returned by step() when there is no transition.
+     */
+    public static final int DEAD_STATE = -1;
+
+    private static final int START_STATE = 0;
+    private static final String FLEXIBLE_SPACE_CHARS = " -";
+
+    // transitions for state i are stored in [offsets[i], offsets[i + 1]),
+    // sorted by label
+    private int[] offsets;
+    private char[] labels;
+    private int[] targets;
+    private Object[] values;
+
+    private DeterministicAutomaton() {
+    }
+
+    /**
+     * Compile the given phrases into a new automaton.  If the same input can
+     * reach more than one phrase, the value of the first one wins.
+     *
+     * @param phrases
+     * @param flexibleSpaces
+     * @return
+     */
+    public static <T> DeterministicAutomaton<T> compile(
+	    Map<String, T> phrases, boolean flexibleSpaces) {
+
+	Nfa nfa = new Nfa();
+	for (Entry<String, T> entry : phrases.entrySet()) {
+	    nfa.add(entry.getKey().toLowerCase(), entry.getValue(),
+		    flexibleSpaces);
+	}
+
+	// subset construction
+	List<BitSet> dfaStates = Lists.newArrayList();
+	Map<BitSet, Integer> dfaStateIds = Maps.newHashMap();
+	List<SortedMap<Character, Integer>> dfaTransitions = Lists
+		.newArrayList();
+
+	BitSet start = nfa.closure(singleton(START_STATE));
+	dfaStates.add(start);
+	dfaStateIds.put(start, 0);
+
+	for (int i = 0; i < dfaStates.size(); i++) {
+	    SortedMap<Character, BitSet> moves = Maps.newTreeMap();
+	    BitSet current = dfaStates.get(i);
+	    for (int s = current.nextSetBit(0); s >= 0; s = current
+		    .nextSetBit(s + 1)) {
+		for (Entry<Character, List<Integer>> edge : nfa.edges.get(s)
+			.entrySet()) {
+		    BitSet move = moves.get(edge.getKey());
+		    if (move == null) {
+			move = new BitSet();
+			moves.put(edge.getKey(), move);
+		    }
+		    for (Integer target : edge.getValue()) {
+			move.set(target);
+		    }
+		}
+	    }
+	    SortedMap<Character, Integer> transitions = Maps.newTreeMap();
+	    for (Entry<Character, BitSet> move : moves.entrySet()) {
+		BitSet target = nfa.closure(move.getValue());
+		Integer targetId = dfaStateIds.get(target);
+		if (targetId == null) {
+		    targetId = dfaStates.size();
+		    dfaStates.add(target);
+		    dfaStateIds.put(target, targetId);
+		}
+		transitions.put(move.getKey(), targetId);
+	    }
+	    dfaTransitions.add(transitions);
+	}
+
+	// flatten
+	DeterministicAutomaton<T> result = new DeterministicAutomaton<T>();
+	int numStates = dfaStates.size();
+	int numTransitions = 0;
+	for (SortedMap<Character, Integer> transitions : dfaTransitions) {
+	    numTransitions += transitions.size();
+	}
+	result.offsets = new int[numStates + 1];
+	result.labels = new char[numTransitions];
+	result.targets = new int[numTransitions];
+	result.values = new Object[numStates];
+
+	int idx = 0;
+	for (int i = 0; i < numStates; i++) {
+	    result.offsets[i] = idx;
+	    for (Entry<Character, Integer> transition : dfaTransitions.get(i)
+		    .entrySet()) {
+		result.labels[idx] = transition.getKey();
+		result.targets[idx] = transition.getValue();
+		idx++;
+	    }
+	    BitSet nfaStates = dfaStates.get(i);
+	    for (int s = nfaStates.nextSetBit(0); s >= 0; s = nfaStates
+		    .nextSetBit(s + 1)) {
+		if (nfa.values.get(s) != null) {
+		    result.values[i] = nfa.values.get(s);
+		    break;
+		}
+	    }
+	}
+	result.offsets[numStates] = idx;
+
+	return result;
+    }
+
+    public int getStartState() {
+	return START_STATE;
+    }
+
+    /**
+     * Follow the transition for the given character, or return DEAD_STATE if
+     * there is none.
+     *
+     * @param state
+     * @param ch
+     * @return
+     */
+    public int step(int state, char ch) {
+	int from = offsets[state];
+	int to = offsets[state + 1];
+	int idx = Arrays.binarySearch(labels, from, to, Character.toLowerCase(ch));
+	return idx < 0 ? DEAD_STATE : targets[idx];
+    }
+
+    /**
+     * Value of the phrase that ends in this state, or null if no phrase ends
+     * here.
+     *
+     * @param state
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public T getValue(int state) {
+	return (T) values[state];
+    }
+
+    /**
+     * Find the end of the longest phrase starting at the given index, or -1
+     * if no phrase matches there.
+     *
+     * @param input
+     * @param start
+     * @return
+     */
+    public int longestMatch(CharSequence input, int start) {
+	int state = START_STATE;
+	int end = -1;
+	for (int i = start; i < input.length(); i++) {
+	    state = step(state, input.charAt(i));
+	    if (state == DEAD_STATE) {
+		break;
+	    } else if (values[state] != null) {
+		end = i + 1;
+	    }
+	}
+	return end;
+    }
+
+    /**
+     * Number of states, mostly for debugging.
+     *
+     * @return
+     */
+    public int size() {
+	return values.length;
+    }
+
+    private static BitSet singleton(int state) {
+	BitSet result = new BitSet();
+	result.set(state);
+	return result;
+    }
+
+    /**
+     * Nondeterministic automaton used while compiling, where each phrase is
+     * just a chain of states hanging off the start state.
+     */
+    private static class Nfa {
+
+	private List<SortedMap<Character, List<Integer>>> edges = Lists
+		.newArrayList();
+	private List<List<Integer>> epsilons = Lists.newArrayList();
+	private List<Object> values = Lists.newArrayList();
+
+	private Nfa() {
+	    newState();
+	}
+
+	private int newState() {
+	    edges.add(Maps.<Character, List<Integer>> newTreeMap());
+	    epsilons.add(new ArrayList<Integer>());
+	    values.add(null);
+	    return edges.size() - 1;
+	}
+
+	private void add(String phrase, Object value, boolean flexibleSpaces) {
+	    int state = START_STATE;
+	    for (int i = 0; i < phrase.length(); i++) {
+		char ch = phrase.charAt(i);
+		int next = newState();
+		if (flexibleSpaces && ch == ' ') {
+		    for (int j = 0; j < FLEXIBLE_SPACE_CHARS.length(); j++) {
+			addEdge(state, FLEXIBLE_SPACE_CHARS.charAt(j), next);
+		    }
+		    epsilons.get(state).add(next);
+		} else {
+		    addEdge(state, ch, next);
+		}
+		state = next;
+	    }
+	    values.set(state, value);
+	}
+
+	private void addEdge(int from, char ch, int to) {
+	    List<Integer> targets = edges.get(from).get(ch);
+	    if (targets == null) {
+		targets = new ArrayList<Integer>();
+		edges.get(from).put(ch, targets);
+	    }
+	    targets.add(to);
+	}
+
+	private BitSet closure(BitSet states) {
+	    BitSet result = (BitSet) states.clone();
+	    List<Integer> stack = Lists.newArrayList();
+	    for (int s = states.nextSetBit(0); s >= 0; s = states
+		    .nextSetBit(s + 1)) {
+		stack.add(s);
+	    }
+	    while (!stack.isEmpty()) {
+		int state = stack.remove(stack.size() - 1);
+		for (Integer next : epsilons.get(state)) {
+		    if (!result.get(next)) {
+			result.set(next);
+			stack.add(next);
+		    }
+		}
+	    }
+	    return result;
+	}
+    }
+}
@@ -133,7 +133,7 @@ public class Trie<T> {
 	private CharSequence key;
 	private E value;
 
-	private TrieLeaf(CharSequence key, E value) {
+	TrieLeaf(CharSequence key, E value) {
 	    this.key = key;
 	    this.value = value;
 	}
@@ -1,15 +1,27 @@
 package com.nolanlawson.relatedness.util;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentMap;
 
+import com.google.common.collect.MapMaker;
+
+/**
+ * Wraps labels by repeatedly splitting any line that's too long at the point where its two
+ * halves are closest in length, so e.g. "this is my father" becomes "this is\nmy father" rather 
+ * than "this is my\nfather."
+ * 
+ * Tokens are read once into offset arrays, and the length of any run of tokens comes from prefix
+ * sums, so each split is a binary search and the whole thing is linear in the length of the input
+ * (plus a log factor per split).  The output is written into a single char array.  Since the same 
+ * few labels come up again and again, results are cached per label and width.
+ * 
+ * @author nolan
+ *
+ */
 public class WordWrapper {
 
-	private static final Pattern TOKENIZER = Pattern.compile("\\S+?\\-|\\S+");
+	private static final int CACHE_SIZE = 1000;
+	
+	private static final ConcurrentMap<Key, String> CACHE = new MapMaker().maximumSize(CACHE_SIZE).makeMap();
 	
 	/**
 	 * Attempt to replace spaces with newlines until all lines are less than the 
@@ -20,92 +32,183 @@ public class WordWrapper {
 	 * @return
 	 */
 	public static String wordWrap(String str, int desiredMaxLength) {
-		List<List<String>> lines = new ArrayList<List<String>>(Collections.singletonList(new ArrayList<String>()));
-		Matcher matcher = TOKENIZER.matcher(str);
-		while (matcher.find()) {
-			lines.get(0).add(matcher.group());
+		Key key = new Key(str, desiredMaxLength);
+		String result = CACHE.get(key);
+		if (result == null) {
+			result = new Wrap(str, desiredMaxLength).wrap();
+			CACHE.put(key, result);
 		}
+		return result;
+	}
+	
+	/**
+	 * Same as \s in a regex.
+	 */
+	private static boolean isWhitespace(char ch) {
+		switch (ch) {
+			case ' ':
+			case '\t':
+			case '\n':
+			case '\u000B':
+			case '\f':
+			case '\r':
+				return true;
+			default:
+				return false;
+		}
+	}
+	
+	private static class Wrap {
+		
+		private final String str;
+		private final int desiredMaxLength;
+		
+		// token i is str[starts[i], ends[i])
+		private int[] starts;
+		private int[] ends;
+		private int numTokens;
 		
-		int index;
-		while ((index = shouldSplit(lines, desiredMaxLength)) != -1) {
-			lines.addAll(index, splitUp(lines.remove(index)));
+		// sum of token lengths and spaces for tokens before i, counting a space after every
+		// token that doesn't end in a hyphen
+		private int[] prefixLengths;
+		
+		private char[] buffer;
+		private int bufferLength;
+		
+		Wrap(String str, int desiredMaxLength) {
+			this.str = str;
+			this.desiredMaxLength = desiredMaxLength;
 		}
 		
-		StringBuilder result = new StringBuilder();
-		int i = 0;
-		for (List<String> line : lines) {
-			if (i > 0) {
-				result.append('\n');
+		String wrap() {
+			tokenize();
+			prefixLengths = new int[numTokens + 1];
+			for (int i = 0; i < numTokens; i++) {
+				prefixLengths[i + 1] = prefixLengths[i] + (ends[i] - starts[i]) + (endsWithHyphen(i) ? 0 : 1);
+			}
+			// tokens are joined by a space or a newline at most, but breaking after a hyphen adds a char
+			buffer = new char[str.length() + numTokens];
+			if (numTokens > 0) {
+				wrap(0, numTokens);
 			}
-			result.append(joinIfNotHyphenated(line));
-			i++;
+			return new String(buffer, 0, bufferLength);
 		}
-		return result.toString();
-	}
-
-	private static List<List<String>> splitUp(List<String> list) {
 		
-		// find the best breakpoint given the desired max size
-		int bestBreakpoint = -1;
-		int lowestDeviation = Integer.MAX_VALUE;
-		for (int i = 1; i < list.size(); i++) {
-			int leftSize = expectedLength(list.subList(0, i));
-			int rightSize = expectedLength(list.subList(i, list.size()));
-			int deviation = Math.abs(leftSize - rightSize);
-			if (deviation < lowestDeviation) {
-				lowestDeviation = deviation;
-				bestBreakpoint = i;
+		/**
+		 * Split up the tokens in [from, to) into lines and write them to the buffer.
+		 */
+		private void wrap(int from, int to) {
+			if (to - from > 1 && expectedLength(from, to) > desiredMaxLength) {
+				int breakpoint = findBreakpoint(from, to);
+				wrap(from, breakpoint);
+				wrap(breakpoint, to);
+			} else {
+				appendLine(from, to);
 			}
 		}
 		
-		List<String> left = list.subList(0, bestBreakpoint);
-		List<String> right = list.subList(bestBreakpoint, list.size());
+		/**
+		 * Find the first breakpoint where the left and right sides are closest in length.  The left side 
+		 * gets longer and the right side shorter as the breakpoint moves right, so it's a binary search.
+		 */
+		private int findBreakpoint(int from, int to) {
+			// first breakpoint where the left side is at least as long as the right
+			int low = from + 1;
+			int high = to - 1;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (deviation(from, mid, to) >= 0) {
+					high = mid;
+				} else {
+					low = mid + 1;
+				}
+			}
+			if (low > from + 1 && Math.abs(deviation(from, low - 1, to)) <= Math.abs(deviation(from, low, to))) {
+				return low - 1;
+			}
+			return low;
+		}
 		
-		@SuppressWarnings("unchecked")
-		List<String>[] result = new List[]{left, right};
-		return (List<List<String>>)Arrays.asList(result);
-	}
-
-	private static int shouldSplit(List<List<String>> lines, int desiredMaxLength) {
-		for (int i = 0; i < lines.size(); i++) {
-			List<String> line = lines.get(i);
-			if (expectedLength(line) > desiredMaxLength) {
-				if (line.size() > 1) { // can be split further
-					return i;
+		private int deviation(int from, int breakpoint, int to) {
+			return expectedLength(from, breakpoint) - expectedLength(breakpoint, to);
+		}
+		
+		/**
+		 * Length of the tokens in [from, to) when joined into one line.
+		 */
+		private int expectedLength(int from, int to) {
+			return prefixLengths[to] - prefixLengths[from] - (endsWithHyphen(to - 1) ? 0 : 1);
+		}
+		
+		private void appendLine(int from, int to) {
+			if (bufferLength > 0) {
+				buffer[bufferLength++] = '\n';
+			}
+			for (int i = from; i < to; i++) {
+				int length = ends[i] - starts[i];
+				str.getChars(starts[i], ends[i], buffer, bufferLength);
+				bufferLength += length;
+				// only add a space if we didn't break on a hyphen
+				if (i < to - 1 && !endsWithHyphen(i)) {
+					buffer[bufferLength++] = ' ';
 				}
 			}
 		}
-		return -1;
-	}
-	
-	/**
-	 * Determine the length of the string, assuming the tokens are joined with a space.
-	 * @param tokens
-	 */
-	private static int expectedLength(List<String> tokens) {
-		int length = 0;
-		for (int i = 0; i < tokens.size(); i++) {
-			String token = tokens.get(i);
-			length += token.length();
-			if (i < tokens.size() - 1 && !token.endsWith("-")) {
-				length++; // for the space
+		
+		private boolean endsWithHyphen(int token) {
+			return str.charAt(ends[token] - 1) == '-';
+		}
+		
+		/**
+		 * Split on whitespace, and also after any hyphen that isn't the first char of a token, 
+		 * e.g. "great-grandfather" becomes "great-" and "grandfather".
+		 */
+		private void tokenize() {
+			// there can't be more tokens than every other char
+			int maxTokens = (str.length() + 1) / 2;
+			starts = new int[maxTokens];
+			ends = new int[maxTokens];
+			int i = 0;
+			while (i < str.length()) {
+				if (isWhitespace(str.charAt(i))) {
+					i++;
+					continue;
+				}
+				int start = i++;
+				while (i < str.length() && !isWhitespace(str.charAt(i))) {
+					if (str.charAt(i++) == '-') {
+						break;
+					}
+				}
+				starts[numTokens] = start;
+				ends[numTokens] = i;
+				numTokens++;
 			}
 		}
-		return length;
 	}
 	
-	private static CharSequence joinIfNotHyphenated(List<String> tokens) {
-		StringBuilder stringBuilder = new StringBuilder();
+	private static class Key {
+		
+		private final String str;
+		private final int desiredMaxLength;
+		
+		Key(String str, int desiredMaxLength) {
+			this.str = str;
+			this.desiredMaxLength = desiredMaxLength;
+		}
 
-		for (int i = 0; i < tokens.size(); i++) {
-			String token = tokens.get(i);
-			stringBuilder.append(token);
-			
-			if (i < tokens.size() - 1) {
-				// only add a space if we didn't break on a hyphen
-				stringBuilder.append(token.endsWith("-") ? "" : " ");
+		@Override
+		public int hashCode() {
+			return 31 * str.hashCode() + desiredMaxLength;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
 			}
+			Key other = (Key) obj;
+			return desiredMaxLength == other.desiredMaxLength && str.equals(other.str);
 		}
-		return stringBuilder;
 	}
 }
@@ -0,0 +1,91 @@
+package com.nolanlawson.relatedness;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.nolanlawson.relatedness.batch.BatchScorer;
+import com.nolanlawson.relatedness.batch.CsvUtil;
+
+public class BatchTest {
+
+	@Test
+	public void testNames() throws IOException {
+		File input = createInput("cousin\ndad's cousin\r\nstep sister\nfoo\n\"great\" uncle\nsister");
+		List<String> expected = Arrays.asList(
+				"cousin,0.125,4.0,", 
+				"dad's cousin,0.0625,5.0,", 
+				"step sister,,,StepRelation",
+				"foo,,,UnknownToken",
+				"\"\"\"great\"\" uncle\",,,UnknownToken",
+				"sister,0.5,2.0,");
+		Assert.assertEquals(expected, score(new BatchScorer(3, -1), input));
+	}
+	
+	@Test
+	public void testCsv() throws IOException {
+		File input = createInput("1,cousin,x\n2,\"grandma's sister, twice\",y\n3\n");
+		List<String> expected = Arrays.asList("cousin,0.125,4.0,", "\"grandma's sister, twice\",,,UnknownToken", ",,,UnknownToken");
+		Assert.assertEquals(expected, score(new BatchScorer(2, 1), input));
+	}
+	
+	@Test
+	public void testCsvWithNewlinesInQuotes() throws IOException {
+		File input = createInput("1,cousin,\"first line\nsecond line\"\n2,\"dad's\r\nsister\",x\n3,\"\"\"\",y\n4,sister,z\n");
+		StringWriter output = new StringWriter();
+		Assert.assertEquals(4, new BatchScorer(2, 1).score(input, output));
+		Assert.assertEquals("cousin,0.125,4.0,\n\"dad's\r\nsister\",0.25,3.0,\n\"\"\"\",,,UnknownToken\nsister,0.5,2.0,\n", 
+				output.toString());
+	}
+	
+	@Test
+	public void testOrderIsKept() throws IOException {
+		// enough lines for lots of batches
+		StringBuilder stringBuilder = new StringBuilder();
+		String[] names = {"sister", "cousin", "aunt", "bogus"};
+		for (int i = 0; i < 20000; i++) {
+			stringBuilder.append(names[i % names.length]).append('\n');
+		}
+		List<String> output = score(new BatchScorer(4, -1), createInput(stringBuilder.toString()));
+		Assert.assertEquals(20000, output.size());
+		for (int i = 0; i < output.size(); i++) {
+			Assert.assertTrue(output.get(i).startsWith(names[i % names.length] + ","));
+		}
+	}
+	
+	@Test
+	public void testCsvUtil() {
+		Assert.assertEquals("b", CsvUtil.getField("a,b,c", 1));
+		Assert.assertEquals("b,\"c", CsvUtil.getField("a,\"b,\"\"c\"", 1));
+		Assert.assertEquals("", CsvUtil.getField("a", 3));
+		Assert.assertEquals("\"b,\"\"c\"", CsvUtil.appendField(new StringBuilder(), "b,\"c").toString());
+	}
+	
+	private List<String> score(BatchScorer scorer, File input) throws IOException {
+		StringWriter output = new StringWriter();
+		long numLines = scorer.score(input, output);
+		List<String> lines = Arrays.asList(output.toString().split("\n"));
+		Assert.assertEquals(numLines, lines.size());
+		return lines;
+	}
+	
+	private File createInput(String contents) throws IOException {
+		File file = File.createTempFile("names", ".txt");
+		file.deleteOnExit();
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write(contents);
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+}
@@ -0,0 +1,64 @@
+package com.nolanlawson.relatedness;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.nolanlawson.relatedness.parser.GraphRenderCache;
+import com.nolanlawson.relatedness.parser.GraphRenderCache.Format;
+import com.nolanlawson.relatedness.parser.RelativeNameParser;
+
+public class GraphRenderCacheTest {
+
+	@Test
+	public void testHitsAndMisses() {
+		GraphRenderCache cache = new GraphRenderCache(1 << 20);
+		
+		String cousin = RelativeNameParser.parse("cousin", true).getGraph().drawGraph();
+		Assert.assertEquals(cousin, cache.render("cousin", Format.Dot));
+		Assert.assertEquals(cousin, cache.render("  Cousin ", Format.Dot));
+		Assert.assertEquals(RelativeNameParser.parse("cousin", true).getGraph().drawSvg(), 
+				cache.render("cousin", Format.Svg));
+		Assert.assertEquals(RelativeNameParser.parse("dad's cousin", true).getGraph().drawJson(), 
+				cache.render("Dad's cousin", Format.Json));
+		// same relation, different labels
+		Assert.assertTrue(cache.render("father's cousin", Format.Json).contains("Your father's"));
+		
+		Assert.assertEquals(4, cache.getMissCount());
+		Assert.assertEquals(1, cache.getHitCount());
+		Assert.assertEquals(0.2, cache.getHitRate(), 0.0);
+		Assert.assertEquals(4, cache.size());
+	}
+	
+	@Test
+	public void testNoGraph() {
+		GraphRenderCache cache = new GraphRenderCache(1 << 20);
+		
+		Assert.assertNull(cache.render("cousin once removed", Format.Dot)); // ambiguous
+		try {
+			cache.render("foobar", Format.Dot);
+			Assert.fail();
+		} catch (UnknownRelationException expected) {
+		}
+		Assert.assertEquals(0, cache.size());
+	}
+	
+	@Test
+	public void testEviction() {
+		int cousinWeight = 128 + 2 * ("cousin".length() + RelativeNameParser.parse("cousin", true).getGraph().drawGraph().length());
+		GraphRenderCache cache = new GraphRenderCache(cousinWeight);
+		
+		cache.render("cousin", Format.Dot);
+		Assert.assertEquals(cousinWeight, cache.getWeight());
+		cache.render("sister", Format.Dot);
+		cache.render("brother", Format.Dot);
+		
+		Assert.assertEquals(1, cache.size());
+		Assert.assertEquals(2, cache.getEvictionCount());
+		Assert.assertTrue(cache.getWeight() <= cousinWeight);
+		
+		// too big to ever fit, so it isn't cached at all
+		cache.render("father's cousin's daughter", Format.Svg);
+		Assert.assertEquals(1, cache.size());
+		Assert.assertEquals(2, cache.getEvictionCount());
+	}
+}
@@ -1,7 +1,17 @@
 package com.nolanlawson.relatedness;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
 import org.junit.Assert;
 import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
 
 import com.nolanlawson.relatedness.graph.RelationGraph;
 import com.nolanlawson.relatedness.parser.RelativeNameParser;
@@ -39,6 +49,89 @@ public class GraphTest {
 		Assert.assertTrue(graph.contains("Your half-\\nbrother's\\ndaughter"));
 	}
 	
+	@Test
+	public void testStreamingGraph() throws IOException {
+		for (String text : new String[]{"sister", "double cousin", "father's cousin's daughter", "half-brother's daughter"}) {
+			RelationGraph graph = RelativeNameParser.parse(text, true).getGraph();
+			StringWriter writer = new StringWriter();
+			graph.drawGraph(writer);
+			Assert.assertEquals(graph.drawGraph(), writer.toString());
+		}
+	}
+	
+	@Test
+	public void testStableOutput() {
+		// nodes and edges come out in the order they were added, so the output is always the same
+		Assert.assertEquals("digraph a {\n" +
+				"size=\"10,10\";\n" +
+				"a [label=\"Your grandpa\", fontname=\"Helvetica\", color=\"#788c45\", penwidth=\"3.0\", " +
+						"style=\"filled\", fillcolor=\"#f6f6f6\"];\n" +
+				"b [label=\"You\", fontname=\"Helvetica\", color=\"#788c45\", penwidth=\"3.0\", " +
+						"style=\"filled\", fillcolor=\"#f6f6f6\"];\n" +
+				"c [label=\"Your parent\", fontname=\"Helvetica\"];\n" +
+				"c -> b;\n" +
+				"a -> c;\n" +
+				"}\n", RelativeNameParser.parse("grandpa", true).getGraph().drawGraph());
+	}
+	
+	@Test
+	public void testJson() {
+		Assert.assertEquals("{\"nodes\":[{\"label\":\"Your grandpa\",\"emphasized\":true}," +
+				"{\"label\":\"You\",\"emphasized\":true},{\"label\":\"Your parent\",\"emphasized\":false}]," +
+				"\"edges\":[[2,1],[0,2]]}", 
+				RelativeNameParser.parse("grandpa", true).getGraph().drawJson());
+		
+		RelationGraph graph = RelativeNameParser.parse("half-brother's daughter", true).getGraph();
+		String json = graph.drawJson();
+		Assert.assertTrue(json.contains("\"Your half-\\nbrother's\\ndaughter\""));
+		Assert.assertEquals(graph.getNumNodes(), countOf(json, "\"label\""));
+		Assert.assertEquals(graph.getNumEdges(), countOf(json, "],[") + 1);
+	}
+	
+	@Test
+	public void testSvg() throws Exception {
+		testSvg("sister");
+		testSvg("grandpa");
+		testSvg("father's cousin's daughter");
+		testSvg("double cousin");
+		testSvg("half-brother's daughter");
+	}
+	
+	private void testSvg(String text) throws Exception {
+		RelationGraph graph = RelativeNameParser.parse(text, true).getGraph();
+		String svg = graph.drawSvg();
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(
+				new InputSource(new StringReader(svg)));
+		NodeList ellipses = document.getElementsByTagName("ellipse");
+		NodeList lines = document.getElementsByTagName("line");
+		// same nodes, edges and emphasis as the DOT
+		String dot = graph.drawGraph();
+		Assert.assertEquals(countOf(dot, "[label"), ellipses.getLength());
+		Assert.assertEquals(countOf(dot, "->"), lines.getLength());
+		Assert.assertEquals(countOf(dot, "#788c45"), countOf(svg, "#788c45"));
+		
+		// every arrow points down, from an ancestor to a descendant
+		for (int i = 0; i < lines.getLength(); i++) {
+			Element line = (Element) lines.item(i);
+			Assert.assertTrue(Double.parseDouble(line.getAttribute("y2")) > Double.parseDouble(line.getAttribute("y1")));
+		}
+		// and nodes don't overlap
+		for (int i = 0; i < ellipses.getLength(); i++) {
+			for (int j = i + 1; j < ellipses.getLength(); j++) {
+				Assert.assertFalse(overlap((Element) ellipses.item(i), (Element) ellipses.item(j)));
+			}
+		}
+	}
+	
+	private boolean overlap(Element ellipse1, Element ellipse2) {
+		return Math.abs(attribute(ellipse1, "cx") - attribute(ellipse2, "cx")) < attribute(ellipse1, "rx") + attribute(ellipse2, "rx")
+				&& Math.abs(attribute(ellipse1, "cy") - attribute(ellipse2, "cy")) < attribute(ellipse1, "ry") + attribute(ellipse2, "ry");
+	}
+	
+	private double attribute(Element element, String name) {
+		return Double.parseDouble(element.getAttribute(name));
+	}
+	
 	private void testParsedGraph(String text, int expectedNumRelations, int expectedNumNodes) {
 		System.out.println(text);
 		String parsedGraph = RelativeNameParser.parse(text, true).getGraph().drawGraph();
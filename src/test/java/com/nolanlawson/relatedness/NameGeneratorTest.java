@@ -0,0 +1,73 @@
+package com.nolanlawson.relatedness;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.nolanlawson.relatedness.parser.RelativeNameGenerator;
+import com.nolanlawson.relatedness.parser.RelativeNameParser;
+
+public class NameGeneratorTest {
+
+	private RelativeNameGenerator generator = new RelativeNameGenerator();
+	
+	@Test
+	public void testBasicNames() {
+		testName("parent", BasicRelation.Parent.getRelation());
+		testName("child", BasicRelation.Child.getRelation());
+		testName("sibling", BasicRelation.Sibling.getRelation());
+		testName("half-sibling", BasicRelation.HalfSibling.getRelation());
+		testName("cousin", BasicRelation.Cousin.getRelation());
+		testName("great-grandparent", BasicRelation.GreatGrandparent.getRelation());
+		testName("double cousin", BasicRelation.DoubleFirstCousin.getRelation());
+		testName("identical twin", BasicRelation.IdenticalTwin.getRelation());
+		Assert.assertNull(generator.generate(BasicRelation.Self.getRelation()));
+	}
+	
+	@Test
+	public void testShortestName() {
+		testName("great-aunt", "grandma's sister");
+		testName("grandparent's cousin", "grandma's cousin");
+		testName("cousin's child", "cousin's son");
+		testName("half-niece", "half brother's daughter");
+		testName("second cousin", "dad's cousin's son");
+	}
+	
+	@Test
+	public void testOutsideOfTable() {
+		testName("great-great-great-great-great-aunt", 
+				"great great great great grandma's sister");
+		testName("great-great-great-great-great-great-grandparent's eighth cousin", 
+				"great great great great great great grandpa's eighth cousin");
+		testName("eighth cousin's great-great-great-great-great-grandchild", 
+				"eighth cousin's great great great great great grandchild");
+		testName("half-great-great-great-great-great-great-niece", 
+				"half sister's great great great great great granddaughter");
+		
+		// beyond eighth cousins
+		Assert.assertNull(generator.generate(new Relation(new CommonAncestor(10, 10), new CommonAncestor(10, 10))));
+		// unrelated, i.e. no common ancestors at all
+		Assert.assertNull(generator.generate(new Relation()));
+		Assert.assertNull(generator.generate(new Relation(2)));
+	}
+	
+	@Test
+	public void testRoundTrip() {
+		String[] names = {"dad's cousin", "mom's half sister's daughter", "great grandpa's brother", 
+				"second cousin's grandchild", "third cousin", "half-uncle", "double cousin's son"};
+		for (String name : names) {
+			Relation relation = RelativeNameParser.parse(name).getRelation();
+			Assert.assertEquals(name, relation, 
+					RelativeNameParser.parse(generator.generate(relation)).getRelation());
+		}
+	}
+	
+	private void testName(String expected, String relativeName) {
+		testName(expected, RelativeNameParser.parse(relativeName).getRelation());
+	}
+	
+	private void testName(String expected, Relation relation) {
+		Assert.assertEquals(expected, generator.generate(relation));
+		// twice, to hit the cache
+		Assert.assertEquals(expected, generator.generate(relation));
+	}
+}
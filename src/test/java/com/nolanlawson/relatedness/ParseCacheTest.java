@@ -0,0 +1,86 @@
+package com.nolanlawson.relatedness;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.nolanlawson.relatedness.parser.ParseError;
+import com.nolanlawson.relatedness.parser.RelationParseCache;
+import com.nolanlawson.relatedness.parser.RelationParseResult;
+import com.nolanlawson.relatedness.parser.RelativeNameParser;
+
+public class ParseCacheTest {
+
+	@Test
+	public void testHitsAndMisses() {
+		RelationParseCache cache = new RelationParseCache(100);
+		
+		Assert.assertEquals(BasicRelation.Cousin.getRelation(), cache.parse("cousin").getRelation());
+		Assert.assertEquals(BasicRelation.Cousin.getRelation(), cache.parse("  Cousin ").getRelation());
+		Assert.assertEquals(BasicRelation.AuntOrUncle.getRelation(), cache.parse("dad's   brother").getRelation());
+		Assert.assertEquals(BasicRelation.AuntOrUncle.getRelation(), cache.parse("Dad's brother").getRelation());
+		
+		Assert.assertEquals(2, cache.getMissCount());
+		Assert.assertEquals(2, cache.getHitCount());
+		Assert.assertEquals(2, cache.size());
+	}
+	
+	@Test
+	public void testErrors() {
+		RelationParseCache cache = new RelationParseCache(100);
+		
+		Assert.assertEquals(ParseError.StepRelation, cache.parse("step-daughter").getParseError());
+		RelationParseResult result = cache.parse("cousin once removed");
+		Assert.assertEquals(ParseError.Ambiguity, result.getParseError());
+		Assert.assertEquals(2, result.getAmbiguityResolutions().size());
+		
+		try {
+			cache.parse("foobar");
+			Assert.fail();
+		} catch (UnknownRelationException expected) {
+		}
+		Assert.assertEquals(ParseError.UnknownToken, cache.tryParse("foobar").getParseError());
+		Assert.assertEquals(3, cache.size());
+		Assert.assertEquals(1, cache.getHitCount());
+	}
+	
+	@Test
+	public void testSameAsParser() {
+		RelationParseCache cache = new RelationParseCache(100);
+		
+		for (String name : new String[]{"Step-daughter", "STEPMOM", "dad's Twin", "second  cousin", 
+				"fraternal  twin", "Identical Twin", "Cousin Once Removed", "Dad's cousin"}) {
+			RelationParseResult expected = RelativeNameParser.tryParse(name);
+			RelationParseResult actual = cache.tryParse(name);
+			Assert.assertEquals(name, expected.getParseError(), actual.getParseError());
+			Assert.assertEquals(name, expected.getRelation(), actual.getRelation());
+		}
+		Assert.assertEquals(ParseError.StepRelation, cache.tryParse("STEPMOM").getParseError());
+		Assert.assertEquals(Arrays.asList("dad's fraternal twin", "dad's identical twin"), 
+				cache.tryParse("dad's Twin").getAmbiguityResolutions());
+	}
+	
+	@Test
+	public void testResultsAreNotShared() {
+		RelationParseCache cache = new RelationParseCache(100);
+		
+		cache.parse("sister").setRelation(BasicRelation.Cousin.getRelation());
+		cache.parse("cousin once removed").getAmbiguityResolutions().clear();
+		
+		Assert.assertEquals(BasicRelation.Sibling.getRelation(), cache.parse("sister").getRelation());
+		Assert.assertEquals(2, cache.parse("cousin once removed").getAmbiguityResolutions().size());
+	}
+	
+	@Test
+	public void testEviction() {
+		RelationParseCache cache = new RelationParseCache(1);
+		
+		cache.parse("cousin");
+		cache.parse("uncle");
+		cache.parse("aunt");
+		
+		Assert.assertEquals(1, cache.size());
+		Assert.assertEquals(2, cache.getEvictionCount());
+	}
+}
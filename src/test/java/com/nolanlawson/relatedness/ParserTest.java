@@ -15,6 +15,8 @@ import static com.nolanlawson.relatedness.BasicRelation.Sibling;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.nolanlawson.relatedness.parser.ParseError;
+import com.nolanlawson.relatedness.parser.RelationParseResult;
 import com.nolanlawson.relatedness.parser.RelativeNameParser;
 
 public class ParserTest {
@@ -104,6 +106,21 @@ public class ParserTest {
 		RelativeNameParser.parse("dad's brother foobar"); // we don't talk about Uncle Foobar anymore
 	}
 	
+	@Test
+	public void testTryParse() {
+		testTryParse("foobar dad's brother", ParseError.UnknownToken);
+		testTryParse("dad's brother foobar", ParseError.UnknownToken);
+		testTryParse("'s brother", ParseError.UnknownToken);
+		testTryParse("cousin daughter", ParseError.MissingPossessive);
+		testTryParse("cousin's cousin", ParseError.InvalidProgression);
+		testTryParse("great son", ParseError.ImpossibleGreatOrHalf);
+		testTryParse("half mother", ParseError.ImpossibleGreatOrHalf);
+		testTryParse("step-daughter", ParseError.StepRelation);
+		testTryParse("cousin once removed", ParseError.Ambiguity);
+		
+		Assert.assertEquals(Cousin.getRelation(), RelativeNameParser.tryParse("dad's brother's daughter").getRelation());
+	}
+	
 	@Test
 	public void testGrandparents() {
 		testEquals("granddad", Grandparent);
@@ -153,6 +170,14 @@ public class ParserTest {
 	    
 	}
 	
+	private void testTryParse(String name, ParseError expectedError) {
+		RelationParseResult result = RelativeNameParser.tryParse(name);
+		Assert.assertEquals(expectedError, result.getParseError());
+		if (expectedError != ParseError.Ambiguity) {
+			Assert.assertNull(result.getRelation());
+		}
+	}
+	
 	private void testEquals(String name, BasicRelation basicRelation) {
 		testEquals(name, basicRelation.getRelation());
 	}
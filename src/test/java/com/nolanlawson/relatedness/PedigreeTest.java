@@ -0,0 +1,205 @@
+package com.nolanlawson.relatedness;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.nolanlawson.relatedness.parser.RelativeNameParser;
+import com.nolanlawson.relatedness.pedigree.AncestryIndex;
+import com.nolanlawson.relatedness.pedigree.KinshipMatrix;
+import com.nolanlawson.relatedness.pedigree.Pedigree;
+
+public class PedigreeTest {
+
+	@Test
+	public void testAgreesWithCalculator() {
+		Pedigree pedigree = new Pedigree(2);
+		
+		int grandpa = pedigree.addFounder();
+		int grandma = pedigree.addFounder();
+		int otherGrandma = pedigree.addFounder();
+		int dad = pedigree.add(grandpa, grandma);
+		int aunt = pedigree.add(grandpa, grandma);
+		int halfUncle = pedigree.add(grandpa, otherGrandma);
+		int mom = pedigree.addFounder();
+		int uncleInLaw = pedigree.addFounder();
+		int me = pedigree.add(dad, mom);
+		int sister = pedigree.add(dad, mom);
+		int cousin = pedigree.add(uncleInLaw, aunt);
+		int cousinsSon = pedigree.add(cousin, pedigree.addFounder());
+		
+		Assert.assertEquals(1.0, pedigree.getRelatedness(me, me), 0.0);
+		testRelatedness(pedigree, me, dad, "father");
+		testRelatedness(pedigree, me, sister, "sister");
+		testRelatedness(pedigree, me, grandpa, "grandfather");
+		testRelatedness(pedigree, me, aunt, "aunt");
+		testRelatedness(pedigree, me, halfUncle, "half uncle");
+		testRelatedness(pedigree, me, cousin, "cousin");
+		testRelatedness(pedigree, me, cousinsSon, "cousin's son");
+		testRelatedness(pedigree, me, mom, "mother");
+		Assert.assertEquals(0.0, pedigree.getRelatedness(me, uncleInLaw), 0.0);
+		Assert.assertEquals(0.0, pedigree.getInbreeding(me), 0.0);
+		
+		AncestryIndex index = AncestryIndex.build(pedigree, 10);
+		Assert.assertEquals(BasicRelation.Self.getRelation(), index.getRelation(me, me));
+		testRelation(index, me, dad, "father");
+		testRelation(index, dad, me, "son");
+		testRelation(index, me, sister, "sister");
+		testRelation(index, me, grandpa, "grandfather");
+		testRelation(index, me, aunt, "aunt");
+		testRelation(index, me, halfUncle, "half uncle");
+		testRelation(index, me, cousin, "cousin");
+		testRelation(index, me, cousinsSon, "cousin's son");
+		testRelation(index, cousinsSon, me, "father's cousin");
+		Assert.assertNull(index.getRelation(me, uncleInLaw));
+		Assert.assertArrayEquals(new int[]{grandpa, grandma}, index.getMostRecentCommonAncestors(me, cousin));
+		
+		// too far back to see
+		Assert.assertNull(AncestryIndex.build(pedigree, 1).getRelation(me, cousin));
+		Assert.assertTrue(index.getSizeInBytes() > index.getNumEntries());
+	}
+	
+	@Test
+	public void testAncestryIndexAgreesWithKinship() {
+		// everyone marries someone from outside the family, so there's only ever one path to each
+		// common ancestor, which is what a Relation can express
+		Random random = new Random(1234);
+		Pedigree pedigree = new Pedigree();
+		int[] generation = new int[]{pedigree.addFounder()};
+		for (int g = 0; g < 5; g++) {
+			int[] spouses = new int[generation.length];
+			for (int i = 0; i < spouses.length; i++) {
+				spouses[i] = pedigree.addFounder();
+			}
+			int[] nextGeneration = new int[generation.length * 2 + 1];
+			for (int i = 0; i < nextGeneration.length; i++) {
+				int couple = random.nextInt(generation.length);
+				nextGeneration[i] = pedigree.add(generation[couple], spouses[couple]);
+			}
+			generation = nextGeneration;
+		}
+		
+		AncestryIndex index = AncestryIndex.build(pedigree, AncestryIndex.MAX_DEPTH);
+		for (int i = 0; i < pedigree.size(); i++) {
+			for (int j = 0; j < pedigree.size(); j++) {
+				Relation relation = index.getRelation(i, j);
+				double coefficient = relation == null ? 0.0 : RelatednessCalculator.calculate(relation).getCoefficient();
+				Assert.assertEquals(pedigree.getRelatedness(i, j), coefficient, 0.0);
+			}
+		}
+	}
+	
+	@Test
+	public void testInbreeding() {
+		Pedigree pedigree = new Pedigree();
+		int father = pedigree.addFounder();
+		int mother = pedigree.addFounder();
+		int brother = pedigree.add(father, mother);
+		int sister = pedigree.add(father, mother);
+		int child = pedigree.add(brother, sister);
+		
+		Assert.assertEquals(0.25, pedigree.getInbreeding(child), 0.0);
+		Assert.assertEquals(0.625, pedigree.getKinship(child, child), 0.0);
+		// closer to their parents than a regular child would be
+		Assert.assertEquals(0.75, pedigree.getRelatedness(child, brother), 0.0);
+	}
+	
+	@Test
+	public void testDeepPedigree() {
+		// long chain of two interleaved families, with lots of shared ancestors
+		Pedigree pedigree = new Pedigree();
+		int a = pedigree.addFounder();
+		int b = pedigree.addFounder();
+		for (int i = 0; i < 1000; i++) {
+			int c = pedigree.add(a, b);
+			int d = pedigree.add(a, b);
+			a = c;
+			b = d;
+		}
+		double inbreeding = pedigree.getInbreeding(pedigree.add(a, b));
+		Assert.assertTrue(inbreeding > 0.99 && inbreeding < 1.0);
+	}
+	
+	@Test
+	public void testManyGenerations() {
+		// far deeper than the call stack would allow if the kinship was computed recursively
+		Pedigree pedigree = new Pedigree();
+		int first = pedigree.addFounder();
+		int last = first;
+		for (int i = 0; i < 100000; i++) {
+			last = pedigree.add(last, pedigree.addFounder());
+		}
+		Assert.assertEquals(0.25, pedigree.getKinship(last, pedigree.getFather(last)), 0.0);
+		Assert.assertEquals(0.0, pedigree.getInbreeding(last), 0.0);
+		Assert.assertEquals(0.0, pedigree.getRelatedness(last, first), 0.0);
+		Assert.assertEquals(Math.pow(0.5, 20), pedigree.getRelatedness(last, last - 40), 0.0);
+	}
+	
+	@Test
+	public void testKinshipMatrix() throws IOException {
+		// small random population that keeps marrying within itself
+		Random random = new Random(42);
+		Pedigree pedigree = new Pedigree();
+		for (int i = 0; i < 20; i++) {
+			pedigree.addFounder();
+		}
+		for (int i = 0; i < 300; i++) {
+			int father = random.nextInt(pedigree.size());
+			int mother = random.nextInt(pedigree.size());
+			pedigree.add(father, father == mother ? Pedigree.UNKNOWN : mother);
+		}
+		
+		File file = File.createTempFile("kinship", ".bin");
+		file.deleteOnExit();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		KinshipMatrix matrix = KinshipMatrix.compute(pedigree, file, executor, 4);
+		try {
+			Assert.assertEquals(pedigree.size(), matrix.size());
+			Assert.assertEquals(8L * 320 * 321 / 2, matrix.getSizeInBytes());
+			for (int i = 0; i < pedigree.size(); i++) {
+				for (int j = 0; j < pedigree.size(); j++) {
+					Assert.assertEquals(pedigree.getKinship(i, j), matrix.getKinship(i, j), 1e-12);
+				}
+			}
+		} finally {
+			executor.shutdown();
+			matrix.close();
+		}
+	}
+	
+	@Test(expected = RejectedExecutionException.class)
+	public void testKinshipMatrixFailure() throws IOException {
+		// the matrix is closed again before the failure is passed on
+		Pedigree pedigree = new Pedigree();
+		pedigree.add(pedigree.addFounder(), pedigree.addFounder());
+		File file = File.createTempFile("kinship", ".bin");
+		file.deleteOnExit();
+		ExecutorService executor = Executors.newFixedThreadPool(1);
+		executor.shutdown();
+		KinshipMatrix.compute(pedigree, file, executor, 1);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testParentsMustComeFirst() {
+		new Pedigree().add(0, Pedigree.UNKNOWN);
+	}
+	
+	private void testRelation(AncestryIndex index, int first, int second, String relativeName) {
+		Assert.assertEquals(relativeName, RelativeNameParser.parse(relativeName).getRelation(), 
+				index.getRelation(first, second));
+	}
+	
+	private void testRelatedness(Pedigree pedigree, int first, int second, String relativeName) {
+		Relation relation = RelativeNameParser.parse(relativeName).getRelation();
+		Assert.assertEquals(relativeName, RelatednessCalculator.calculate(relation).getCoefficient(), 
+				pedigree.getRelatedness(first, second), 0.0);
+		Assert.assertEquals(relativeName, pedigree.getRelatedness(first, second), 
+				pedigree.getRelatedness(second, first), 0.0);
+	}
+}
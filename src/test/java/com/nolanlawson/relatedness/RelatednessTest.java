@@ -17,6 +17,7 @@ import static com.nolanlawson.relatedness.BasicRelation.SecondCousin;
 import static com.nolanlawson.relatedness.BasicRelation.Self;
 import static com.nolanlawson.relatedness.BasicRelation.Sibling;
 
+import java.math.BigInteger;
 import java.util.Arrays;
 
 import org.junit.Assert;
@@ -87,6 +88,91 @@ public class RelatednessTest {
 	}
 
 	
+	@Test
+	public void testPackedRelations() {
+	    double[] output = new double[4];
+	    for (BasicRelation basicRelation : BasicRelation.values()) {
+		int[] packed = PackedRelation.pack(basicRelation.getRelation());
+		Assert.assertEquals(basicRelation.getRelation(), PackedRelation.unpack(packed));
+		
+		RelatednessCalculator.calculate(packed, output, 2);
+		Relatedness relatedness = RelatednessCalculator.calculate(basicRelation.getRelation());
+		Assert.assertEquals(relatedness.getAverageDegree(), 
+			output[2 + RelatednessCalculator.AVERAGE_DEGREE_OFFSET], 0.0);
+		Assert.assertEquals(relatedness.getCoefficient(), 
+			output[2 + RelatednessCalculator.COEFFICIENT_OFFSET], 0.0);
+	    }
+	}
+	
+	@Test
+	public void testExactCoefficients() {
+	    Assert.assertEquals("1", RelatednessCalculator.calculate(Self.getRelation()).getExactCoefficient().toString());
+	    Assert.assertEquals("1/8", RelatednessCalculator.calculate(Cousin.getRelation()).getExactCoefficient().toString());
+	    Assert.assertEquals("1/4", RelatednessCalculator.calculate(DoubleFirstCousin.getRelation()).getExactCoefficient().toString());
+	    Assert.assertEquals("1/32", RelatednessCalculator.calculate(
+		    RelativeNameParser.parse("second cousin").getRelation()).getExactCoefficient().toString());
+	    
+	    // same value reached different ways
+	    Assert.assertEquals(RelatednessCalculator.calculate(Grandparent.getRelation()).getExactCoefficient(),
+		    RelatednessCalculator.calculate(HalfSibling.getRelation()).getExactCoefficient());
+	    Assert.assertEquals(ExactCoefficient.valueOf(0.375), ExactCoefficient.valueOf(6, 4));
+	    Assert.assertEquals("3/8", ExactCoefficient.valueOf(0.375).toString());
+	    Assert.assertEquals("6", ExactCoefficient.valueOf(3, -1).toString());
+	    
+	    // ordering is exact even where doubles would need an epsilon
+	    ExactCoefficient tiny = ExactCoefficient.powerOfOneHalf(200);
+	    Assert.assertTrue(tiny.compareTo(ExactCoefficient.ZERO) > 0);
+	    Assert.assertTrue(ExactCoefficient.ONE.compareTo(ExactCoefficient.ONE.plus(ExactCoefficient.powerOfOneHalf(60))) < 0);
+	    Assert.assertTrue(ExactCoefficient.valueOf(3, 200).compareTo(ExactCoefficient.valueOf(1, 1)) < 0);
+	    Assert.assertTrue(ExactCoefficient.valueOf(1, 1).compareTo(ExactCoefficient.valueOf(3, 200)) > 0);
+	    
+	    for (BasicRelation basicRelation : BasicRelation.values()) {
+		Relatedness relatedness = RelatednessCalculator.calculate(basicRelation.getRelation());
+		Assert.assertEquals(relatedness.getCoefficient(), relatedness.getExactCoefficient().doubleValue(), 0.0);
+	    }
+	}
+	
+	@Test
+	public void testWidelySeparatedDegrees() {
+	    // the exact sums need more than 64 bits, but the doubles are the same as ever
+	    Relatedness relatedness = RelatednessCalculator.calculate(
+		    new Relation(CommonAncestor.valueOf(1, 0), CommonAncestor.valueOf(40, 40)));
+	    Assert.assertEquals(0.5, relatedness.getCoefficient(), 0.0);
+	    Assert.assertEquals(40.5, relatedness.getAverageDegree(), 0.0);
+	    Assert.assertEquals(ExactCoefficient.valueOf(BigInteger.ONE.shiftLeft(79).add(BigInteger.ONE), 80),
+		    relatedness.getExactCoefficient());
+	    Assert.assertEquals(0.5, relatedness.getExactCoefficient().doubleValue(), 0.0);
+	    
+	    relatedness = RelatednessCalculator.calculate(
+		    new Relation(CommonAncestor.valueOf(0, 1), CommonAncestor.valueOf(70, 1)));
+	    Assert.assertEquals(0.5, relatedness.getCoefficient(), 0.0);
+	    Assert.assertEquals(BigInteger.ONE.shiftLeft(70).add(BigInteger.ONE) + "/" + BigInteger.ONE.shiftLeft(71),
+		    relatedness.getExactCoefficient().toString());
+	    
+	    ExactCoefficient huge = ExactCoefficient.ONE.plus(ExactCoefficient.powerOfOneHalf(2000)).times(3);
+	    Assert.assertEquals(3.0, huge.doubleValue(), 0.0);
+	    Assert.assertTrue(huge.compareTo(ExactCoefficient.valueOf(3, 0)) > 0);
+	    
+	    // just past what fits in a long
+	    ExactCoefficient max = ExactCoefficient.valueOf(Long.MAX_VALUE, 0);
+	    ExactCoefficient pastMax = max.plus(ExactCoefficient.ONE);
+	    Assert.assertEquals(ExactCoefficient.valueOf(BigInteger.ONE.shiftLeft(63), 0), pastMax);
+	    Assert.assertTrue(max.compareTo(pastMax) < 0);
+	    Assert.assertTrue(pastMax.compareTo(max) > 0);
+	    Assert.assertEquals(ExactCoefficient.valueOf(BigInteger.valueOf(Long.MAX_VALUE).multiply(BigInteger.valueOf(3)), 0), 
+		    max.times(3));
+	}
+	
+	@Test
+	public void testRelatednessFromDoubles() {
+	    Assert.assertEquals("3/8", new Relatedness(2.0, 0.375).getExactCoefficient().toString());
+	    // accepted as before, but there's no exact value for them
+	    Assert.assertTrue(Double.isNaN(new Relatedness(2.0, Double.NaN).getCoefficient()));
+	    Assert.assertNull(new Relatedness(2.0, Double.NaN).getExactCoefficient());
+	    Assert.assertEquals(-0.5, new Relatedness(2.0, -0.5).getCoefficient(), 0.0);
+	    Assert.assertNull(new Relatedness(2.0, -0.5).getExactCoefficient());
+	}
+	
 	private void testAmbiguity(String input, String... resolutions) {
 	    RelationParseResult result = RelativeNameParser.parse(input);
 	    Assert.assertEquals(ParseError.Ambiguity, result.getParseError());
@@ -0,0 +1,37 @@
+package com.nolanlawson.relatedness;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RelationTest {
+
+	@Test
+	public void testDerivedRelations() {
+		Assert.assertEquals(BasicRelation.GreatAuntOrUncle.getRelation(), 
+				BasicRelation.AuntOrUncle.getRelation().withGreats(1));
+		Assert.assertEquals(BasicRelation.GreatGrandchild.getRelation(), 
+				BasicRelation.Grandchild.getRelation().withGreats(1));
+		Assert.assertEquals(BasicRelation.HalfSibling.getRelation(), 
+				BasicRelation.Sibling.getRelation().withHalf());
+		Assert.assertEquals(BasicRelation.Grandparent.getRelation(), 
+				BasicRelation.Parent.getRelation().compose(BasicRelation.Parent.getRelation()));
+		Assert.assertEquals(BasicRelation.Cousin.getRelation(), 
+				BasicRelation.AuntOrUncle.getRelation().compose(BasicRelation.Child.getRelation()));
+		Assert.assertEquals(new Relation(2, new CommonAncestor(1, 2), new CommonAncestor(1, 2)), 
+				BasicRelation.IdenticalTwin.getRelation().compose(BasicRelation.Child.getRelation()));
+	}
+	
+	@Test
+	public void testInterning() {
+		Assert.assertSame(BasicRelation.HalfSibling.getRelation(), BasicRelation.Sibling.getRelation().withHalf());
+		Assert.assertSame(BasicRelation.Cousin.getRelation(), 
+				new Relation(new CommonAncestor(2, 2), new CommonAncestor(2, 2)).intern());
+		Assert.assertSame(CommonAncestor.valueOf(2, 3), CommonAncestor.valueOf(2, 3));
+		Assert.assertEquals(CommonAncestor.valueOf(200, 3), CommonAncestor.valueOf(200, 3));
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void testImmutable() {
+		BasicRelation.Sibling.getRelation().getCommonAncestors().remove(0);
+	}
+}
@@ -1,14 +1,27 @@
 package com.nolanlawson.relatedness;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.google.common.collect.ImmutableMap;
 import com.nolanlawson.relatedness.autosuggest.RelationSuggester;
+import com.nolanlawson.relatedness.util.CompiledTrie;
 
 public class SuggesterTest {
 
@@ -46,6 +59,26 @@ public class SuggesterTest {
 	testSuggestions(2, "cousin ", "cousin once removed", "cousin twice removed");
     }
     
+    @Test
+    public void testMixedCase() {
+	testSuggestions(2, "Mom's Sis", "mom's sis", "mom's sister");
+	testSuggestions(1, "DAD'S COU", "dad's cousin");
+	testSuggestions(1, "Grandma'", "grandma's aunt");
+	Assert.assertEquals(suggester.suggest("dad's cou", 10), suggester.suggest("Dad's Cou", 10));
+    }
+    
+    @Test
+    public void testTypos() {
+	testSuggestions(1, "cusin", "cousin");
+	testSuggestions(1, "neice", "niece");
+	testSuggestions(1, "grandpaw", "grandpa");
+	testSuggestions(1, "Grandpaw", "grandpa");
+	testSuggestions(1, "great-grandpaw", "great-grandpa");
+	testSuggestions(1, "secnd cousn", "second cousin");
+	testSuggestions(1, "xyzzy");
+	testSuggestions(1, "mq"); // too short to guess at
+    }
+    
     @Test
     public void testSuggestions2() {
 	testSuggestions(1, "great unc", "great uncle");
@@ -65,6 +98,86 @@ public class SuggesterTest {
 	testSuggestions(1, "great-great-great-half-aunt", "great-great-great-half-aunt");
     }
     
+    @Test
+    public void testSnapshot() throws IOException {
+	File snapshot = File.createTempFile("suggester", ".bin");
+	snapshot.deleteOnExit();
+	suggester.writeSnapshot(snapshot);
+	
+	RelationSuggester loaded = new RelationSuggester(snapshot);
+	for (String input : new String[]{"", "g", "grand", "grandpa", "grandpa's", "grandpa's cous", 
+		"half", "cousin ", "great-great-half-au", "xyz"}) {
+	    Assert.assertEquals(suggester.suggest(input, 10), loaded.suggest(input, 10));
+	}
+    }
+    
+    @Test
+    public void testOutOfDateSnapshot() throws IOException {
+	// e.g. one written before the vocabulary changed
+	File snapshot = File.createTempFile("suggester", ".bin");
+	snapshot.deleteOnExit();
+	CompiledTrie.build(ImmutableMap.of("cousin", 1.0), ImmutableMap.<String, Integer>of(), 0L).writeTo(snapshot);
+	try {
+	    new RelationSuggester(snapshot);
+	    Assert.fail("loaded an out-of-date snapshot");
+	} catch (IOException expected) {
+	}
+    }
+    
+    @Test
+    public void testSharedInstance() {
+	Assert.assertSame(RelationSuggester.getInstance(), RelationSuggester.getInstance());
+	Assert.assertEquals(suggester.suggest("grandpa's", 10), RelationSuggester.getInstance().suggest("grandpa's", 10));
+    }
+    
+    @Test
+    public void testConcurrentSuggestions() throws Exception {
+	// every prefix of a few phrases, including the compound and misspelled ones
+	final List<String> inputs = new ArrayList<String>();
+	for (String phrase : new String[]{"grandpa's second cousin", "great-great-half-aunt", "cousin twice removed",
+		"dad's brother's daughter", "neice", "grandpaw's cusin"}) {
+	    for (int i = 0; i <= phrase.length(); i++) {
+		inputs.add(phrase.substring(0, i));
+	    }
+	}
+	final Map<String, List<String>> expected = new HashMap<String, List<String>>();
+	for (String input : inputs) {
+	    expected.put(input, suggester.suggest(input, 10));
+	}
+	
+	final RelationSuggester sharedSuggester = RelationSuggester.getInstance();
+	int numThreads = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+	ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+	try {
+	    List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+	    for (int i = 0; i < numThreads; i++) {
+		final int seed = i;
+		futures.add(executor.submit(new Callable<Integer>() {
+
+		    public Integer call() {
+			// each thread goes through the inputs in a different order
+			List<String> shuffled = new ArrayList<String>(inputs);
+			Collections.shuffle(shuffled, new Random(seed));
+			int numMismatches = 0;
+			for (int j = 0; j < 20; j++) {
+			    for (String input : shuffled) {
+				if (!expected.get(input).equals(sharedSuggester.suggest(input, 10))) {
+				    numMismatches++;
+				}
+			    }
+			}
+			return numMismatches;
+		    }
+		}));
+	    }
+	    for (Future<Integer> future : futures) {
+		Assert.assertEquals(Integer.valueOf(0), future.get());
+	    }
+	} finally {
+	    executor.shutdown();
+	}
+    }
+    
     private void testSuggestions(int limit, String input, String... outputs) {
 	List<String> result = suggester.suggest(input, limit);
 	Assert.assertEquals(new HashSet<String>(Arrays.asList(outputs)), new HashSet<String>(result));
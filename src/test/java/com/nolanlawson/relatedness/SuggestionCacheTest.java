@@ -0,0 +1,109 @@
+package com.nolanlawson.relatedness;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.nolanlawson.relatedness.autosuggest.RelationSuggester;
+import com.nolanlawson.relatedness.autosuggest.SuggestionCache;
+
+public class SuggestionCacheTest {
+
+	private static RelationSuggester suggester;
+	
+	@BeforeClass
+	public static void setUpClass() {
+		suggester = new RelationSuggester();
+	}
+	
+	@Test
+	public void testHitsAndMisses() {
+		SuggestionCache cache = new SuggestionCache(suggester, 100);
+		
+		Assert.assertEquals(suggester.suggest("gr", 10), cache.suggest("gr", 10));
+		Assert.assertEquals(suggester.suggest("gr", 10), cache.suggest("GR", 10));
+		Assert.assertEquals(suggester.suggest("gr", 5), cache.suggest("gr", 5));
+		Assert.assertEquals(suggester.suggest("cusin", 5), cache.suggest("cusin", 5));
+		// suggest() is case-insensitive, so the cache can be too
+		Assert.assertEquals(suggester.suggest("Mom's Sis", 5), cache.suggest("Mom's Sis", 5));
+		Assert.assertEquals(suggester.suggest("DAD'S COU", 5), cache.suggest("dad's cou", 5));
+		
+		Assert.assertEquals(5, cache.getMissCount());
+		Assert.assertEquals(1, cache.getHitCount());
+		Assert.assertEquals(1.0 / 6, cache.getHitRate(), 0.0);
+		Assert.assertEquals(5, cache.size());
+	}
+	
+	@Test(expected = UnsupportedOperationException.class)
+	public void testResultsAreUnmodifiable() {
+		new SuggestionCache(suggester, 100).suggest("gr", 10).clear();
+	}
+	
+	@Test
+	public void testEviction() {
+		SuggestionCache cache = new SuggestionCache(suggester, 1);
+		
+		cache.suggest("g", 10);
+		cache.suggest("gr", 10);
+		cache.suggest("gra", 10);
+		
+		Assert.assertEquals(1, cache.size());
+		Assert.assertEquals(2, cache.getEvictionCount());
+	}
+	
+	@Test
+	public void testConcurrentMissesAreCoalesced() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger numComputed = new AtomicInteger();
+		RelationSuggester slowSuggester = new RelationSuggester() {
+
+			@Override
+			public List<String> suggest(String input, int limit) {
+				numComputed.incrementAndGet();
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				return super.suggest(input, limit);
+			}
+		};
+		final SuggestionCache cache = new SuggestionCache(slowSuggester, 100);
+		
+		int numThreads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			List<Future<List<String>>> futures = Lists.newArrayList();
+			for (int i = 0; i < numThreads; i++) {
+				futures.add(executor.submit(new Callable<List<String>>() {
+
+					public List<String> call() {
+						return cache.suggest("gr", 10);
+					}
+				}));
+			}
+			started.await();
+			Thread.sleep(100); // give the others a chance to pile up behind the first one
+			release.countDown();
+			for (Future<List<String>> future : futures) {
+				Assert.assertEquals(suggester.suggest("gr", 10), future.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		Assert.assertEquals(1, numComputed.get());
+		Assert.assertEquals(1, cache.getMissCount());
+		Assert.assertEquals(numThreads - 1, cache.getHitCount());
+	}
+}
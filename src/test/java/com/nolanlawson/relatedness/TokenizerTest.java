@@ -0,0 +1,69 @@
+package com.nolanlawson.relatedness;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+import com.nolanlawson.relatedness.parser.RelationParseResult;
+import com.nolanlawson.relatedness.parser.RelativeNameParser;
+import com.nolanlawson.relatedness.parser.RelativeToken;
+import com.nolanlawson.relatedness.parser.RelativeTokenizer;
+
+public class TokenizerTest {
+
+	@Test
+	public void testSingleTokens() {
+		testToken("cousin", BasicRelation.Cousin, 0, false, 0);
+		testToken("great-great-half-uncle", BasicRelation.AuntOrUncle, 2, true, 0);
+		testToken("half great GREAT aunt", BasicRelation.AuntOrUncle, 2, true, 0);
+		testToken("greatgrammy", BasicRelation.Grandparent, 1, false, 0);
+		testToken("grand-daddy", BasicRelation.Grandparent, 0, false, 0);
+		testToken("second cousin, 2 times removed", BasicRelation.SecondCousin, 0, false, 2);
+		testToken("1st cousin thrice removed", BasicRelation.Cousin, 0, false, 3);
+	}
+	
+	@Test
+	public void testChain() {
+		String input = "grandma's great-great-half-uncle's second cousin";
+		RelativeToken first = RelativeTokenizer.nextToken(input, 0);
+		Assert.assertEquals("grandma", input.substring(first.getStart(), first.getEnd()));
+		Assert.assertFalse(first.hasPossessive());
+		
+		RelativeToken second = RelativeTokenizer.nextToken(input, first.getEnd());
+		Assert.assertTrue(second.hasPossessive());
+		Assert.assertEquals("great-great-half-uncle", input.substring(second.getModifiersStart(), second.getEnd()));
+		
+		RelativeToken third = RelativeTokenizer.nextToken(input, second.getEnd());
+		Assert.assertEquals(BasicRelation.SecondCousin, third.getBasicRelation());
+		Assert.assertNull(RelativeTokenizer.nextToken(input, third.getEnd()));
+	}
+	
+	@Test
+	public void testNoToken() {
+		Assert.assertNull(RelativeTokenizer.nextToken("foobar dad", 0));
+		Assert.assertNull(RelativeTokenizer.nextToken("great half great uncle", 0));
+		Assert.assertNull(RelativeTokenizer.nextToken("half half sister", 0));
+	}
+	
+	@Test
+	public void testHalfGreatRemoved() {
+		// used to blow up, because the regex group for the greats didn't participate in the match
+		RelationParseResult result = RelativeNameParser.parse("half great uncle once removed");
+		Assert.assertEquals(
+				"parent's half great uncle", result.getAmbiguityResolutions().get(0));
+	}
+	
+	@Test(timeout = 5000, expected = UnknownRelationException.class)
+	public void testAdversarialInput() {
+		RelativeNameParser.parse(Strings.repeat("great-", 100000) + "half-half-uncle");
+	}
+	
+	private void testToken(String input, BasicRelation basicRelation, int numGreats, boolean half, int timesRemoved) {
+		RelativeToken token = RelativeTokenizer.tokenAt(input, 0);
+		Assert.assertEquals(input.length(), token.getEnd());
+		Assert.assertEquals(basicRelation, token.getBasicRelation());
+		Assert.assertEquals(numGreats, token.getNumGreats());
+		Assert.assertEquals(half, token.isHalf());
+		Assert.assertEquals(timesRemoved, token.getTimesRemoved());
+	}
+}
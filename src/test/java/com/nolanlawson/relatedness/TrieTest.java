@@ -0,0 +1,134 @@
+package com.nolanlawson.relatedness;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.nolanlawson.relatedness.autosuggest.WeightedRelation;
+import com.nolanlawson.relatedness.util.CompiledTrie;
+import com.nolanlawson.relatedness.util.Trie;
+import com.nolanlawson.relatedness.util.Trie.TrieLeaf;
+
+public class TrieTest {
+
+	@Test
+	public void testCompiledTrie() throws IOException {
+		Map<String, Double> values = new ImmutableMap.Builder<String, Double>()
+				.put("grandma", 1.0).put("grandpa", 1.0).put("grandparent", 2.0).put("granddad", 0.5)
+				.put("great-grandma", 0.5).put("great-grandpa", 0.25).put("gramps", 1.0).build();
+		Trie<Double> trie = Trie.newTrie();
+		for (Map.Entry<String, Double> entry : values.entrySet()) {
+			trie.put(entry.getKey(), entry.getValue());
+		}
+		trie.compile();
+		CompiledTrie compiledTrie = CompiledTrie.build(values, ImmutableMap.of("gramps", 3), 42L);
+		
+		File file = File.createTempFile("trie", ".bin");
+		file.deleteOnExit();
+		compiledTrie.writeTo(file);
+		CompiledTrie mappedTrie = CompiledTrie.map(file, 42L);
+		Assert.assertEquals(42L, mappedTrie.getFingerprint());
+		try {
+			CompiledTrie.map(file, 43L);
+			Assert.fail("loaded a trie built from different data");
+		} catch (IOException expected) {
+		}
+		
+		for (CompiledTrie actualTrie : new CompiledTrie[]{compiledTrie, mappedTrie}) {
+			Assert.assertEquals(7, actualTrie.size());
+			Assert.assertEquals(1.0, actualTrie.get("grandpa"), 0.0);
+			Assert.assertNull(actualTrie.get("grand"));
+			Assert.assertNull(actualTrie.get("grandpas"));
+			Assert.assertEquals(3, actualTrie.getTag("gramps"));
+			Assert.assertEquals(CompiledTrie.NO_TAG, actualTrie.getTag("grandpa"));
+			Assert.assertEquals(CompiledTrie.NO_ENTRY, actualTrie.getEntry("grand"));
+			for (String key : values.keySet()) {
+				int entry = actualTrie.getEntry(key);
+				Assert.assertEquals(key, actualTrie.getKey(entry));
+				Assert.assertEquals(values.get(key), actualTrie.getWeight(entry), 0.0);
+			}
+			CompiledTrie.EntryIterator entries = actualTrie.getBestEntries("gra");
+			for (TrieLeaf<Double> leaf : actualTrie.getTop("gra", 10)) {
+				Assert.assertEquals(leaf.getKey(), actualTrie.getKey(entries.next()));
+			}
+			Assert.assertFalse(entries.hasNext());
+			
+			for (String prefix : new String[]{"", "g", "gra", "grand", "grandpa", "great", "x"}) {
+				// Trie.getAll() is in no particular order, but the CompiledTrie's is A-Z
+				Assert.assertEquals(Ordering.natural().sortedCopy(keys(trie.getAll(prefix))), keys(actualTrie.getAll(prefix)));
+				for (int limit = 0; limit < 10; limit++) {
+					Assert.assertEquals(top(trie, prefix, limit), keys(actualTrie.getTop(prefix, limit)));
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testCompiledTrieSharesSuffixes() {
+		Map<String, Double> values = new ImmutableMap.Builder<String, Double>()
+				.put("grandma", 1.0).put("great-grandma", 2.0).put("half-grandma", 3.0)
+				.put("great-great-grandma", 4.0).build();
+		CompiledTrie compiledTrie = CompiledTrie.build(values, ImmutableMap.<String, Integer>of(), 0L);
+		
+		// a plain trie would need 42 nodes, but the "grandma"s at the end are all shared
+		Assert.assertEquals(23, compiledTrie.getNumNodes());
+		for (Map.Entry<String, Double> entry : values.entrySet()) {
+			Assert.assertEquals(entry.getValue(), compiledTrie.get(entry.getKey()));
+		}
+		Assert.assertEquals(Lists.newArrayList("great-great-grandma=4.0", "half-grandma=3.0", "great-grandma=2.0", 
+				"grandma=1.0"), keys(compiledTrie.getTop("", 10)));
+		Assert.assertEquals(Lists.newArrayList("great-grandma=2.0", "great-great-grandma=4.0"), 
+				keys(compiledTrie.getAll("great-g")));
+	}
+	
+	@Test
+	public void testCompiledTrieTypos() {
+		Map<String, Double> values = new ImmutableMap.Builder<String, Double>()
+				.put("grandma", 1.0).put("grandpa", 1.0).put("great-grandma", 0.5).put("niece", 1.0).build();
+		CompiledTrie compiledTrie = CompiledTrie.build(values, ImmutableMap.<String, Integer>of(), 0L);
+		
+		// swapped letters only count as one edit
+		CompiledTrie.EntryIterator entries = compiledTrie.getFuzzyEntries("neice", 1, 0.25F, 1000);
+		Assert.assertEquals("niece", compiledTrie.getKey(entries.next()));
+		Assert.assertEquals(1, entries.getEdits());
+		Assert.assertFalse(entries.hasNext());
+		
+		// closer matches come first, and nothing is returned twice
+		entries = compiledTrie.getFuzzyEntries("granpa", 2, 0.25F, 1000);
+		List<String> keys = Lists.newArrayList();
+		while (entries.hasNext()) {
+			int entry = entries.next();
+			keys.add(compiledTrie.getKey(entry) + "=" + entries.getEdits());
+		}
+		Assert.assertEquals(Lists.newArrayList("grandpa=1", "grandma=2"), keys);
+		
+		Assert.assertFalse(compiledTrie.getFuzzyEntries("granpa", 2, 0.25F, 0).hasNext());
+	}
+	
+	// the best leaves by brute force, highest value first, then A-Z
+	private List<String> top(Trie<Double> trie, String prefix, int limit) {
+		List<WeightedRelation> sorted = Ordering.natural().sortedCopy(
+				Iterables.transform(trie.getAll(prefix), WeightedRelation.fromTrieLeafFunction));
+		List<String> result = Lists.newArrayList();
+		for (WeightedRelation relation : Iterables.limit(sorted, limit)) {
+			result.add(relation.getRelation() + "=" + relation.getWeight());
+		}
+		return result;
+	}
+	
+	private List<String> keys(List<TrieLeaf<Double>> leaves) {
+		List<String> result = Lists.newArrayList();
+		for (TrieLeaf<Double> leaf : leaves) {
+			result.add(leaf.getKey() + "=" + leaf.getValue());
+		}
+		return result;
+	}
+}
@@ -16,6 +16,18 @@ public class WordWrapperTest {
 				WordWrapper.wordWrap("great-great-great-great-grandfather", 20));
 		Assert.assertEquals("your half-\nbrother's\ndaughter", 
 				WordWrapper.wordWrap("your half-brother's daughter", 16));
+		Assert.assertEquals("", WordWrapper.wordWrap("  ", 16));
+		Assert.assertEquals("Your\ngreat-\ngreat-\ngrandparent's\nsibling", 
+				WordWrapper.wordWrap("Your great-great-grandparent's sibling", 1));
+	}
+	
+	@Test
+	public void testCachedResults() {
+		String label = "Your dad's great-grandparent";
+		String wrapped = WordWrapper.wordWrap(label, 20);
+		Assert.assertEquals("Your dad's great-\ngrandparent", wrapped);
+		Assert.assertSame(wrapped, WordWrapper.wordWrap(label, 20));
+		Assert.assertEquals(label, WordWrapper.wordWrap(label, 30));
 	}
 	
 }